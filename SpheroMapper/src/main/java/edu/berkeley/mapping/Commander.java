@@ -68,7 +68,9 @@ public interface Commander {
 
     /**
      * Gets the current heading reported from the commander.
-     * @return the current heading
+     * @return the current heading, in degrees counter-clockwise from the x axis
+     * of the positions reported in the events, the same convention as the
+     * heading variations.
      */
     public float getCurrentHeading();
 }
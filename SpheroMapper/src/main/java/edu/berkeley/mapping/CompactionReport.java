@@ -0,0 +1,36 @@
+package edu.berkeley.mapping;
+
+/**
+ * The result of a compaction of the map layers.
+ * @see MapStore#compact()
+ */
+public class CompactionReport {
+	/**
+	 * The number of vertices of the compacted layers before the compaction.
+	 */
+	private final int verticesBefore;
+
+	/**
+	 * The number of vertices of the compacted layers after the compaction.
+	 */
+	private final int verticesAfter;
+
+	public CompactionReport(int verticesBefore, int verticesAfter) {
+		this.verticesBefore = verticesBefore;
+		this.verticesAfter = verticesAfter;
+	}
+
+	/**
+	 * @return The number of vertices of the compacted layers before the compaction.
+	 */
+	public int getVerticesBefore() {
+		return verticesBefore;
+	}
+
+	/**
+	 * @return The number of vertices of the compacted layers after the compaction.
+	 */
+	public int getVerticesAfter() {
+		return verticesAfter;
+	}
+}
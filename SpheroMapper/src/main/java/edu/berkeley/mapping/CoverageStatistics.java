@@ -0,0 +1,106 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Keeps the free, object, known and unknown areas of the map up to date as
+ * pieces are added to it, so reading them costs nothing.
+ * The pieces are rasterized into an occupancy grid and the areas come from
+ * the number of cells in each state, so adding a piece costs about the
+ * number of cells it touches, no matter how big the map is. The areas are
+ * precise up to the size of a cell.
+ * @see OccupancyGrid
+ */
+class CoverageStatistics {
+	/**
+	 * The grid the pieces are rasterized into.
+	 */
+	private final OccupancyGrid grid;
+
+	/**
+	 * The area of a cell.
+	 */
+	private final double cellArea;
+
+	/**
+	 * The number of cells inside the perimeter, or zero if it's not known yet.
+	 */
+	private int insideCells = 0;
+
+	/**
+	 *
+	 * @param grid The grid the pieces are rasterized into. It may be shared
+	 * with the map store, as long as only this object changes it.
+	 */
+	CoverageStatistics(OccupancyGrid grid) {
+		this.grid = grid;
+		this.cellArea = grid.getCellSize() * grid.getCellSize();
+	}
+
+	/**
+	 * Accounts for a free piece of ground.
+	 * @param swath The free piece.
+	 * @return The number of cells that became free.
+	 */
+	synchronized int addFree(Geometry swath){
+		return grid.raise(swath, OccupancyGrid.FREE);
+	}
+
+	/**
+	 * Accounts for an object.
+	 * @param obstacle The object's area.
+	 * @return The number of cells that became occupied.
+	 */
+	synchronized int addObstacle(Geometry obstacle){
+		return grid.raise(obstacle, OccupancyGrid.OBSTACLE);
+	}
+
+	/**
+	 * Sets the perimeter, marking every unknown cell outside it.
+	 * This is the only operation that goes through the whole grid, and it's
+	 * only done when a perimeter is found. From then on, the cells added when
+	 * the grid grows are outside too.
+	 * @param perimeter The whole perimeter.
+	 */
+	synchronized void setPerimeter(Geometry perimeter){
+		grid.setGrowthState(OccupancyGrid.OUTSIDE);
+		grid.replaceAll(OccupancyGrid.UNKNOWN, OccupancyGrid.OUTSIDE);
+		grid.replace(perimeter, OccupancyGrid.OUTSIDE, OccupancyGrid.UNKNOWN);
+		insideCells = grid.count(perimeter);
+	}
+
+	synchronized double getFreeArea(){
+		return grid.count(OccupancyGrid.FREE) * cellArea;
+	}
+
+	synchronized double getObstacleArea(){
+		return grid.count(OccupancyGrid.OBSTACLE) * cellArea;
+	}
+
+	/**
+	 * @return The area inside the perimeter that's either free or an object,
+	 * or zero if the perimeter is not known yet.
+	 */
+	synchronized double getKnownArea(){
+		if(insideCells == 0) return 0;
+		return Math.max(0, insideCells - grid.count(OccupancyGrid.UNKNOWN)) * cellArea;
+	}
+
+	/**
+	 * @return The area inside the perimeter that's neither free nor an object,
+	 * or zero if the perimeter is not known yet.
+	 */
+	synchronized double getUnknownArea(){
+		if(insideCells == 0) return 0;
+		return grid.count(OccupancyGrid.UNKNOWN) * cellArea;
+	}
+
+	/**
+	 * @return The fraction of the area inside the perimeter that's known, or
+	 * zero if the perimeter is not known yet.
+	 */
+	synchronized double getCoverageRatio(){
+		if(insideCells == 0) return 0;
+		return Math.max(0, 1 - (double) grid.count(OccupancyGrid.UNKNOWN) / insideCells);
+	}
+}
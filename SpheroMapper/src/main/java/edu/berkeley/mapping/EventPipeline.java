@@ -0,0 +1,190 @@
+package edu.berkeley.mapping;
+
+import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Front end that takes the events away from the thread reporting them.
+ * The events are put in a bounded queue and a single mapping thread hands
+ * them to the mapper in the order they were reported, so the geometry work
+ * and the commands given to the commander happen in that thread. When the
+ * queue is full, the queue full policy of the parameters is applied.
+ * Checkpoints requested from other threads are also taken in the mapping
+ * thread, between two events, or within {@link #CHECKPOINT_POLL_MILLIS}
+ * when no event comes. Errors handling an event are logged in the
+ * {@link RingLog}.
+ * @see Parameters#getEventQueueCapacity()
+ * @see Parameters#getQueueFullPolicy()
+ */
+public class EventPipeline {
+	private static final RingLog.Message EVENT_ERROR_MESSAGE = RingLog.message(RingLog.Category.STATE, "Error handling event {0} at ({1}, {2}).", MappingEvent.Type.class);
+
+	/**
+	 * The longest the mapping thread waits for an event before looking for a
+	 * checkpoint request. The requests don't take a slot of the queue, so
+	 * they can't displace an event.
+	 */
+	public static final long CHECKPOINT_POLL_MILLIS = 100;
+
+	/**
+	 * The mapper the events are handed to. Only the mapping thread uses it.
+	 */
+	private final Mapper mapper;
+
+	/**
+	 * The events waiting for the mapping thread.
+	 */
+	private final BlockingQueue<MappingEvent> queue;
+
+	/**
+	 * What's done with an event reported when the queue is full.
+	 */
+	private final Parameters.QueueFullPolicy queueFullPolicy;
+
+	/**
+	 * The number of events discarded because the queue was full.
+	 */
+	private final AtomicLong droppedEvents = new AtomicLong();
+
+	/**
+	 * The file of the checkpoint requested, or <code>null</code> if there's
+	 * none pending.
+	 */
+	private final AtomicReference<File> checkpointRequest = new AtomicReference<File>();
+
+	/**
+	 * The mapping thread, or <code>null</code> if the pipeline isn't running.
+	 */
+	private Thread thread;
+
+	/**
+	 *
+	 * @param mapper The mapper the events are handed to. Its parameters define
+	 * the capacity of the queue and the queue full policy.
+	 */
+	public EventPipeline(Mapper mapper) {
+		this.mapper = mapper;
+		this.queue = new ArrayBlockingQueue<MappingEvent>(Math.max(1, mapper.getParameters().getEventQueueCapacity()));
+		this.queueFullPolicy = mapper.getParameters().getQueueFullPolicy();
+	}
+
+	/**
+	 * Starts the mapping thread, if it isn't running.
+	 */
+	public synchronized void start(){
+		if(thread != null) return;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}, "Mapper");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the mapping thread after the event being handled, if any. The
+	 * queued events are kept.
+	 */
+	public synchronized void stop(){
+		if(thread == null) return;
+		thread.interrupt();
+		thread = null;
+	}
+
+	/**
+	 * Queues an event for the mapper. It never waits for the geometry work,
+	 * and only waits for room in the queue if the policy is
+	 * {@link Parameters.QueueFullPolicy#BLOCK}.
+	 * @param event The event reported.
+	 * @return <code>false</code> if an event was discarded because the queue
+	 * was full.
+	 */
+	public boolean report(MappingEvent event){
+		if(queue.offer(event)) return true;
+		switch(queueFullPolicy){
+			case DROP_NEWEST:
+				droppedEvents.incrementAndGet();
+				return false;
+			case BLOCK:
+				try {
+					queue.put(event);
+					return true;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					droppedEvents.incrementAndGet();
+					return false;
+				}
+			default:
+				boolean dropped = false;
+				while(!queue.offer(event)){
+					if(queue.poll() != null){
+						droppedEvents.incrementAndGet();
+						dropped = true;
+					}
+				}
+				return !dropped;
+		}
+	}
+
+	/**
+	 * Asks the mapping thread to take a checkpoint after the event being
+	 * handled, and to write it in background. It never waits, so it can be
+	 * called from the UI thread. A request replaces the pending one, if any.
+	 * @param file The file the checkpoint is written to.
+	 * @see Mapper#checkpoint()
+	 */
+	public void requestCheckpoint(File file){
+		checkpointRequest.set(file);
+	}
+
+	/**
+	 * @return The number of events waiting for the mapping thread.
+	 */
+	public int getPendingEvents(){
+		return queue.size();
+	}
+
+	/**
+	 * @return The number of events discarded because the queue was full.
+	 */
+	public long getDroppedEvents(){
+		return droppedEvents.get();
+	}
+
+	/**
+	 * @return The mapper the events are handed to.
+	 */
+	public Mapper getMapper() {
+		return mapper;
+	}
+
+	/**
+	 * The loop of the mapping thread.
+	 */
+	private void drain(){
+		while(!Thread.currentThread().isInterrupted()){
+			MappingEvent event;
+			try {
+				event = queue.poll(CHECKPOINT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return;
+			}
+			if(event != null){
+				try {
+					mapper.reportEvent(event);
+				} catch (RuntimeException e) {
+					//A failure handling one event mustn't stop the mapping.
+					RingLog.log(EVENT_ERROR_MESSAGE, event.getType().ordinal(), event.getX(), event.getY());
+				}
+			}
+			File file = checkpointRequest.getAndSet(null);
+			if(file != null) mapper.checkpoint().writeInBackground(file);
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import java.util.ArrayList;
+
+/**
+ * Accumulates the free ground swaths reported to the mapper without merging
+ * each one into the whole free geometry.
+ * Swaths are buffered and, once a batch is full, merged together with a
+ * cascaded union. Merged batches are kept in levels, like a binary counter, so
+ * a batch is only merged with batches of about the same size. The full free
+ * geometry is only built when it is queried; point queries are answered
+ * against the parts without merging them.
+ * @see Mapper#getFreeGeometry()
+ */
+class FreeSpaceAccumulator {
+	/**
+	 * The geometry factory for the merged geometries.
+	 */
+	private final GeometryFactory geometryFactory;
+
+	/**
+	 * How many swaths are buffered before they are merged into a batch.
+	 */
+	private final int batchSize;
+
+	/**
+	 * Swaths added since the last batch was merged.
+	 */
+	private final ArrayList<Geometry> pending = new ArrayList<Geometry>();
+
+	/**
+	 * Merged batches. The entry at index i holds about <code>batchSize * 2^i</code>
+	 * swaths, or <code>null</code> if that level is empty.
+	 */
+	private final ArrayList<Geometry> levels = new ArrayList<Geometry>();
+
+	/**
+	 * The prepared version of each level, by index.
+	 */
+	private final ArrayList<PreparedGeometryCache> preparedLevels = new ArrayList<PreparedGeometryCache>();
+
+	/**
+	 * The full free geometry as of the last query.
+	 */
+	private Geometry geometry;
+
+	/**
+	 * The prepared version of <code>geometry</code>.
+	 */
+	private final PreparedGeometryCache prepared = new PreparedGeometryCache();
+
+	/**
+	 * Tells if swaths were added after <code>geometry</code> was built.
+	 */
+	private boolean dirty = false;
+
+	/**
+	 *
+	 * @param geometryFactory The geometry factory for the merged geometries.
+	 * @param batchSize How many swaths are buffered before they are merged.
+	 */
+	FreeSpaceAccumulator(GeometryFactory geometryFactory, int batchSize) {
+		this.geometryFactory = geometryFactory;
+		this.batchSize = Math.max(1, batchSize);
+		this.geometry = geometryFactory.createMultiPolygon(null);
+	}
+
+	/**
+	 * Adds a free ground swath. The cost doesn't depend on the size of the map.
+	 * @param swath The swath to be added.
+	 */
+	synchronized void add(Geometry swath){
+		if(swath == null || swath.isEmpty()) return;
+		dirty = true;
+		pending.add(swath);
+		if(pending.size() >= batchSize){
+			Geometry batch = RobustOverlay.union(pending, geometryFactory);
+			pending.clear();
+			push(batch, 0);
+		}
+	}
+
+	/**
+	 * Builds, if needed, and returns the whole free geometry.
+	 * @return The union of all swaths added so far.
+	 */
+	synchronized Geometry getGeometry(){
+		if(dirty){
+			ArrayList<Geometry> parts = new ArrayList<Geometry>(pending);
+			for (Geometry level : levels) {
+				if(level != null) parts.add(level);
+			}
+			if(!geometry.isEmpty()) parts.add(geometry);
+			geometry = RobustOverlay.union(parts, geometryFactory);
+			pending.clear();
+			levels.clear();
+			dirty = false;
+		}
+		return geometry;
+	}
+
+	/**
+	 * Tells if a point is in the free ground without building the whole
+	 * geometry. The point is checked against the buffered swaths, each level
+	 * and the last built geometry, so a point on the seam of two parts is
+	 * found too.
+	 * @param point The point to be checked.
+	 * @return <code>true</code> if the point is in the union of the swaths
+	 * added so far, border included.
+	 */
+	synchronized boolean covers(Point point){
+		if(covers(geometry, prepared, point)) return true;
+		for (int i = 0; i < levels.size(); i++) {
+			if(levels.get(i) == null) continue;
+			while(preparedLevels.size() <= i) preparedLevels.add(new PreparedGeometryCache());
+			if(covers(levels.get(i), preparedLevels.get(i), point)) return true;
+		}
+		for (Geometry swath : pending) {
+			if(swath.getEnvelopeInternal().intersects(point.getCoordinate()) && swath.intersects(point)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Builds the whole free geometry, if needed, and replaces it by its
+	 * compacted version.
+	 * @param compactor The compactor to be used.
+	 * @return The number of vertices before and after the compaction.
+	 */
+	synchronized CompactionReport compact(GeometryCompactor compactor){
+		Geometry before = getGeometry();
+		geometry = compactor.compact(before);
+		return new CompactionReport(before.getNumPoints(), geometry.getNumPoints());
+	}
+
+	/**
+	 *
+	 * @return <code>true</code> if no swath was added yet.
+	 */
+	synchronized boolean isEmpty(){
+		return !dirty && geometry.isEmpty();
+	}
+
+	/**
+	 * Puts a merged geometry in a level, merging it with the level's current
+	 * content and carrying the result upwards while levels are occupied.
+	 * @param g The merged geometry.
+	 * @param level The first level to try.
+	 */
+	private void push(Geometry g, int level){
+		while(level < levels.size() && levels.get(level) != null){
+			g = RobustOverlay.union(g, levels.get(level));
+			levels.set(level, null);
+			level++;
+		}
+		while(levels.size() <= level) levels.add(null);
+		levels.set(level, g);
+	}
+
+	private static boolean covers(Geometry g, PreparedGeometryCache cache, Point point){
+		if(g.isEmpty() || !g.getEnvelopeInternal().intersects(point.getCoordinate())) return false;
+		return cache.get(g).intersects(point);
+	}
+}
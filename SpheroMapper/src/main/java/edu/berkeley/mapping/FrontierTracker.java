@@ -0,0 +1,311 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.IntersectionMatrix;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.util.PolygonExtracter;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Keeps the regions of the perimeter that are still unknown, split in square
+ * tiles and indexed by a quadtree, to find the nearest one without overlaying
+ * the whole map.
+ * Adding to the map only marks the tiles it touches as changed, and their
+ * regions are computed again, by the map store, on the next query. The
+ * search looks at the regions around the point in a window that doubles
+ * until the nearest large enough region is found. A region split by the
+ * tiles is measured as a whole: when tiles change, the pieces on both sides
+ * of their edges are linked again, and the pieces of each region are joined
+ * with a union-find that adds up their areas, so a query only looks the area
+ * up.
+ */
+class FrontierTracker {
+	/**
+	 * Computes the unknown part of an area of the map.
+	 */
+	static interface Source {
+		/**
+		 * @param area The area of a tile.
+		 * @return The unknown part of the area.
+		 */
+		Geometry getUnknownGeometry(Envelope area);
+	}
+
+	/**
+	 * An unknown region, clipped to its tile.
+	 */
+	private static class Region {
+		final Geometry geometry;
+		final double area;
+
+		/**
+		 * The next piece towards the one that represents the whole region.
+		 */
+		Region parent = this;
+
+		/**
+		 * The area of the whole region, only up to date in the piece that
+		 * represents it.
+		 */
+		double regionArea;
+
+		Region(Geometry geometry) {
+			this.geometry = geometry;
+			this.area = geometry.getArea();
+		}
+	}
+
+	private final Source source;
+
+	private final GeometryFactory geometryFactory;
+
+	/**
+	 * The length of the side of a tile.
+	 */
+	private final double tileSize;
+
+	/**
+	 * The regions of each tile that's up to date, by key.
+	 */
+	private final HashMap<Long, List<Region>> regions = new HashMap<Long, List<Region>>();
+
+	/**
+	 * The tiles that changed after their regions were computed.
+	 */
+	private final HashSet<Long> changedTiles = new HashSet<Long>();
+
+	/**
+	 * The pairs of connected pieces across the edge between each tile and the
+	 * tile to its right, by the key of the left tile.
+	 */
+	private final HashMap<Long, List<Region[]>> rightLinks = new HashMap<Long, List<Region[]>>();
+
+	/**
+	 * The pairs of connected pieces across the edge between each tile and the
+	 * tile above it, by the key of the lower tile.
+	 */
+	private final HashMap<Long, List<Region[]>> upLinks = new HashMap<Long, List<Region[]>>();
+
+	/**
+	 * The regions, by envelope.
+	 */
+	private final Quadtree index = new Quadtree();
+
+	/**
+	 * Every tile ever changed.
+	 */
+	private final HashSet<Long> tiles = new HashSet<Long>();
+
+	/**
+	 * The area of all the tiles ever changed, which bounds the search.
+	 */
+	private final Envelope bounds = new Envelope();
+
+	/**
+	 *
+	 * @param source Computes the unknown part of the tiles.
+	 * @param geometryFactory The geometry factory of the map.
+	 * @param tileSize The length of the side of a tile.
+	 */
+	FrontierTracker(Source source, GeometryFactory geometryFactory, double tileSize) {
+		this.source = source;
+		this.geometryFactory = geometryFactory;
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * Marks the tiles of an area as changed.
+	 * @param area The area that changed in the map.
+	 */
+	synchronized void invalidate(Envelope area){
+		if(area.isNull()) return;
+		int firstColumn = index(area.getMinX());
+		int lastColumn = index(area.getMaxX());
+		int firstRow = index(area.getMinY());
+		int lastRow = index(area.getMaxY());
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				changedTiles.add(key(column, row));
+				tiles.add(key(column, row));
+			}
+		}
+		bounds.expandToInclude(new Envelope(firstColumn * tileSize, (lastColumn + 1) * tileSize, firstRow * tileSize, (lastRow + 1) * tileSize));
+	}
+
+	/**
+	 * Marks every tile as changed.
+	 */
+	synchronized void invalidateAll(){
+		changedTiles.addAll(tiles);
+	}
+
+	/**
+	 * Finds the unknown region nearest to a point.
+	 * @param point The point.
+	 * @param minArea Regions smaller than this are skipped. The area of a
+	 * region is the area of all its pieces, in every tile.
+	 * @return The nearest piece of a large enough region, clipped to its
+	 * tile, or <code>null</code> if there's none.
+	 */
+	@SuppressWarnings("unchecked")
+	synchronized Geometry nearest(Coordinate point, double minArea){
+		update();
+		if(index.size() == 0) return null;
+		double radius = tileSize;
+		while(true){
+			Envelope window = new Envelope(point);
+			window.expandBy(radius);
+			Region best = null;
+			double bestDistance = Double.MAX_VALUE;
+			Geometry p = geometryFactory.createPoint(point);
+			List<Region> candidates = index.query(window);
+			for (Region region : candidates) {
+				if(!window.intersects(region.geometry.getEnvelopeInternal())) continue;
+				double distance = region.geometry.distance(p);
+				if(distance < bestDistance && isLarger(region, minArea)){
+					bestDistance = distance;
+					best = region;
+				}
+			}
+			//A region out of the window can't be nearer than the radius.
+			if(best != null && bestDistance <= radius) return best.geometry;
+			if(window.contains(bounds)) return best == null ? null : best.geometry;
+			radius *= 2;
+		}
+	}
+
+	/**
+	 * @param piece The piece of the region.
+	 * @param minArea The area.
+	 * @return <code>true</code> if the whole region is larger than the area.
+	 */
+	private static boolean isLarger(Region piece, double minArea){
+		return piece.area > minArea || find(piece).regionArea > minArea;
+	}
+
+	/**
+	 * @param piece A piece of a region.
+	 * @return The piece that represents the whole region.
+	 */
+	private static Region find(Region piece){
+		Region root = piece;
+		while(root.parent != root) root = root.parent;
+		while(piece != root){
+			Region next = piece.parent;
+			piece.parent = root;
+			piece = next;
+		}
+		return root;
+	}
+
+	/**
+	 * Joins the regions of two connected pieces.
+	 */
+	private static void join(Region a, Region b){
+		Region rootA = find(a);
+		Region rootB = find(b);
+		if(rootA == rootB) return;
+		rootB.parent = rootA;
+		rootA.regionArea += rootB.regionArea;
+	}
+
+	/**
+	 * @return <code>true</code> if the pieces overlap or share a segment of
+	 * their borders. Pieces touching only at a point aren't connected.
+	 */
+	private static boolean isConnected(Geometry a, Geometry b){
+		IntersectionMatrix matrix = a.relate(b);
+		return matrix.matches("T********") || matrix.matches("****1****");
+	}
+
+	/**
+	 * Computes again the regions of the changed tiles, the links across their
+	 * edges, and the area of every region.
+	 */
+	@SuppressWarnings("unchecked")
+	private void update(){
+		if(changedTiles.isEmpty()) return;
+		for (Long key : changedTiles) {
+			List<Region> old = regions.remove(key);
+			if(old != null){
+				for (Region region : old) {
+					index.remove(region.geometry.getEnvelopeInternal(), region);
+				}
+			}
+			int column = (int) (key >> 32);
+			int row = (int) (long) key;
+			Envelope tile = new Envelope(column * tileSize, (column + 1) * tileSize, row * tileSize, (row + 1) * tileSize);
+			List<Polygon> polygons = PolygonExtracter.getPolygons(source.getUnknownGeometry(tile));
+			ArrayList<Region> tileRegions = new ArrayList<Region>();
+			for (Polygon polygon : polygons) {
+				if(polygon.isEmpty()) continue;
+				Region region = new Region(polygon);
+				tileRegions.add(region);
+				index.insert(polygon.getEnvelopeInternal(), region);
+			}
+			if(!tileRegions.isEmpty()) regions.put(key, tileRegions);
+		}
+		for (Long key : changedTiles) {
+			int column = (int) (key >> 32);
+			int row = (int) (long) key;
+			link(rightLinks, key, key(column + 1, row));
+			link(rightLinks, key(column - 1, row), key);
+			link(upLinks, key, key(column, row + 1));
+			link(upLinks, key(column, row - 1), key);
+		}
+		changedTiles.clear();
+		for (List<Region> tileRegions : regions.values()) {
+			for (Region region : tileRegions) {
+				region.parent = region;
+				region.regionArea = region.area;
+			}
+		}
+		for (List<Region[]> links : rightLinks.values()) {
+			for (Region[] link : links) {
+				join(link[0], link[1]);
+			}
+		}
+		for (List<Region[]> links : upLinks.values()) {
+			for (Region[] link : links) {
+				join(link[0], link[1]);
+			}
+		}
+	}
+
+	/**
+	 * Finds the connected pieces across the edge shared by two tiles.
+	 * @param links Where the pairs of pieces are kept.
+	 * @param first The key of the left or lower tile, which the pairs are kept by.
+	 * @param second The key of the other tile.
+	 */
+	private void link(HashMap<Long, List<Region[]>> links, Long first, Long second){
+		links.remove(first);
+		List<Region> firstRegions = regions.get(first);
+		List<Region> secondRegions = regions.get(second);
+		if(firstRegions == null || secondRegions == null) return;
+		ArrayList<Region[]> pairs = new ArrayList<Region[]>();
+		for (Region a : firstRegions) {
+			Envelope envelope = a.geometry.getEnvelopeInternal();
+			for (Region b : secondRegions) {
+				if(!envelope.intersects(b.geometry.getEnvelopeInternal())) continue;
+				if(isConnected(a.geometry, b.geometry)) pairs.add(new Region[]{a, b});
+			}
+		}
+		if(!pairs.isEmpty()) links.put(first, pairs);
+	}
+
+	private int index(double value){
+		return (int) Math.floor(value / tileSize);
+	}
+
+	private static long key(int column, int row){
+		return ((long) column << 32) | (row & 0xFFFFFFFFL);
+	}
+}
@@ -0,0 +1,84 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.PrecisionModel;
+import com.vividsolutions.jts.geom.util.PolygonExtracter;
+import com.vividsolutions.jts.precision.GeometryPrecisionReducer;
+import com.vividsolutions.jts.simplify.TopologyPreservingSimplifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reduces the number of vertices of a map layer.
+ * The overlapping swaths leave behind many tiny vertices, slivers and holes,
+ * which make every later operation slower. The compactor snaps the layer to
+ * a precision grid, simplifies it preserving its topology and removes the
+ * polygons and holes smaller than a threshold.
+ * @see Parameters#getSnapPrecision()
+ * @see Parameters#getCompactionTolerance()
+ * @see Parameters#getSliverArea()
+ */
+class GeometryCompactor {
+	private final GeometryFactory geometryFactory;
+
+	/**
+	 * The precision model of the grid the geometries are snapped to.
+	 */
+	private final PrecisionModel precisionModel;
+
+	/**
+	 * The distance tolerance of the simplification.
+	 */
+	private final double tolerance;
+
+	/**
+	 * The area below which polygons and holes are removed.
+	 */
+	private final double sliverArea;
+
+	/**
+	 *
+	 * @param geometryFactory The geometry factory for the results.
+	 * @param parameters The parameters of the mapping algorithm.
+	 */
+	GeometryCompactor(GeometryFactory geometryFactory, Parameters parameters) {
+		this.geometryFactory = geometryFactory;
+		this.precisionModel = RobustOverlay.precisionModel(parameters.getSnapPrecision());
+		this.tolerance = parameters.getCompactionTolerance();
+		this.sliverArea = parameters.getSliverArea();
+	}
+
+	/**
+	 * @param geometry A polygonal geometry.
+	 * @return The compacted geometry.
+	 */
+	Geometry compact(Geometry geometry){
+		if(geometry.isEmpty()) return geometry;
+		Geometry result = GeometryPrecisionReducer.reduce(geometry, precisionModel);
+		if(tolerance > 0) result = TopologyPreservingSimplifier.simplify(result, tolerance);
+		return removeSlivers(result);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Geometry removeSlivers(Geometry geometry){
+		List<Polygon> polygons = PolygonExtracter.getPolygons(geometry);
+		ArrayList<Polygon> kept = new ArrayList<Polygon>();
+		for (Polygon polygon : polygons) {
+			if(polygon.getArea() < sliverArea) continue;
+			ArrayList<LinearRing> holes = new ArrayList<LinearRing>();
+			for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+				LinearRing hole = (LinearRing) polygon.getInteriorRingN(i);
+				if(geometryFactory.createPolygon(hole, null).getArea() >= sliverArea) holes.add(hole);
+			}
+			if(holes.size() == polygon.getNumInteriorRing()){
+				kept.add(polygon);
+			}else{
+				kept.add(geometryFactory.createPolygon((LinearRing) polygon.getExteriorRing(), holes.toArray(new LinearRing[holes.size()])));
+			}
+		}
+		return geometryFactory.createMultiPolygon(kept.toArray(new Polygon[kept.size()]));
+	}
+}
@@ -0,0 +1,357 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.algorithm.locate.IndexedPointInAreaLocator;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Location;
+import com.vividsolutions.jts.geom.util.PolygonExtracter;
+import com.vividsolutions.jts.operation.union.UnaryUnionOp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Map store that rasterizes the layers into an occupancy grid.
+ * The objects and the perimeter, which are few and small, are also kept as
+ * geometries, since the path planning needs them. The free ground is only
+ * kept in the grid, and its geometry is built from the cells when it's asked.
+ * @see MapStore
+ * @see OccupancyGrid
+ */
+public class GridMapStore implements MapStore {
+	/**
+	 * The geometry factory for the layers.
+	 */
+	private final GeometryFactory geometryFactory;
+
+	/**
+	 * The grid with the state of each cell of the ground.
+	 */
+	private final OccupancyGrid grid;
+
+	/**
+	 * The areas of the layers, computed from the grid.
+	 */
+	private final CoverageStatistics coverageStatistics;
+
+	/**
+	 * The geometry object to represent the objects on the ground.
+	 */
+	private Geometry objectsGeometry;
+
+	/**
+	 * The geometry object to represent the perimeter.
+	 */
+	private Geometry perimeterGeometry;
+
+	/**
+	 * The free geometry built from the grid, or <code>null</code> if the grid
+	 * changed after it was built.
+	 */
+	private Geometry freeGeometry;
+
+	/**
+	 * Bounds every free cell, so the cells out of it aren't looked at. Cells
+	 * later taken by objects are still bounded, which is harmless.
+	 */
+	private final Envelope freeBounds = new Envelope();
+
+	/**
+	 * The index of each object found, used by the intersection tests.
+	 */
+	private final ObstacleIndex obstacles = new ObstacleIndex();
+
+	/**
+	 * The unknown regions, updated only where the grid changes.
+	 */
+	private final FrontierTracker frontier;
+
+	/**
+	 * Incremented every time a layer changes.
+	 */
+	private long version = 0;
+
+	/**
+	 * The length of the side of the tiles the free pieces are built by.
+	 */
+	private final double tileSize;
+
+	/**
+	 * The free geometry of each tile that has free cells, by key.
+	 * @see #key(int, int)
+	 */
+	private final HashMap<Long, Geometry> freeTiles = new HashMap<Long, Geometry>();
+
+	/**
+	 * The tiles whose cells changed after their free geometry was built.
+	 */
+	private final HashSet<Long> changedFreeTiles = new HashSet<Long>();
+
+	/**
+	 * The polygons of every tile, or <code>null</code> if a tile changed after
+	 * they were collected.
+	 */
+	private Geometry freePieces;
+
+	/**
+	 *
+	 * @param geometryFactory The geometry factory for the layers.
+	 * @param parameters The parameters of the mapping algorithm.
+	 */
+	public GridMapStore(GeometryFactory geometryFactory, Parameters parameters) {
+		this.geometryFactory = geometryFactory;
+		this.grid = new OccupancyGrid(parameters.getGridSize(), parameters.getMaxGridSize(), parameters.getGridCellSize(), 0, 0);
+		this.coverageStatistics = new CoverageStatistics(grid);
+		this.objectsGeometry = geometryFactory.createMultiPolygon(null);
+		this.perimeterGeometry = geometryFactory.createMultiPolygon(null);
+		this.tileSize = parameters.getTileSize();
+		this.frontier = new FrontierTracker(new FrontierTracker.Source() {
+			@Override
+			public Geometry getUnknownGeometry(Envelope area) {
+				if(perimeterGeometry.isEmpty()) return GridMapStore.this.geometryFactory.createMultiPolygon(null);
+				return cellsGeometry(OccupancyGrid.UNKNOWN, area);
+			}
+		}, geometryFactory, parameters.getTileSize());
+	}
+
+	@Override
+	public void addFree(Geometry swath) {
+		if(coverageStatistics.addFree(swath) > 0){
+			freeGeometry = null;
+			freeBounds.expandToInclude(swath.getEnvelopeInternal());
+			invalidateFreeTiles(swath.getEnvelopeInternal());
+			version++;
+			frontier.invalidate(swath.getEnvelopeInternal());
+		}
+	}
+
+	@Override
+	public void addObstacle(Geometry obstacle) {
+		objectsGeometry = RobustOverlay.union(objectsGeometry, obstacle);
+		obstacles.add(obstacle);
+		version++;
+		if(coverageStatistics.addObstacle(obstacle) > 0){
+			freeGeometry = null;
+			invalidateFreeTiles(obstacle.getEnvelopeInternal());
+			frontier.invalidate(obstacle.getEnvelopeInternal());
+		}
+	}
+
+	@Override
+	public void addPerimeter(Geometry perimeter) {
+		perimeterGeometry = RobustOverlay.union(perimeterGeometry, perimeter);
+		version++;
+		coverageStatistics.setPerimeter(perimeterGeometry);
+		frontier.invalidate(perimeterGeometry.getEnvelopeInternal());
+	}
+
+	/**
+	 * The grid doesn't grow with the number of swaths, so there's nothing to
+	 * compact.
+	 * @return A report with no vertices.
+	 */
+	@Override
+	public CompactionReport compact() {
+		return new CompactionReport(0, 0);
+	}
+
+	@Override
+	public boolean isFree(Coordinate coordinate) {
+		return grid.get(coordinate.x, coordinate.y) == OccupancyGrid.FREE;
+	}
+
+	@Override
+	public boolean isFreeWithin(Geometry area) {
+		if(grid.count(OccupancyGrid.FREE) == 0) return false;
+		Envelope envelope = area.getEnvelopeInternal();
+		IndexedPointInAreaLocator locator = new IndexedPointInAreaLocator(area);
+		Coordinate center = new Coordinate();
+		int size = grid.getSize();
+		int firstColumn = Math.max(0, grid.column(freeBounds.getMinX()));
+		int lastColumn = Math.min(size - 1, grid.column(freeBounds.getMaxX()));
+		int firstRow = Math.max(0, grid.row(freeBounds.getMinY()));
+		int lastRow = Math.min(size - 1, grid.row(freeBounds.getMaxY()));
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				if(grid.get(column, row) != OccupancyGrid.FREE) continue;
+				center.x = grid.centerX(column);
+				center.y = grid.centerY(row);
+				if(!envelope.contains(center)) return false;
+				if(locator.locate(center) != Location.INTERIOR) return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean intersectsObstacle(Geometry geometry) {
+		return obstacles.intersects(geometry);
+	}
+
+	@Override
+	public double getUnknownArea() {
+		return coverageStatistics.getUnknownArea();
+	}
+
+	@Override
+	public double getCoverageRatio() {
+		return coverageStatistics.getCoverageRatio();
+	}
+
+	@Override
+	public Geometry getUnknownGeometry() {
+		if(perimeterGeometry.isEmpty()) return geometryFactory.createMultiPolygon(null);
+		return cellsGeometry(OccupancyGrid.UNKNOWN, null);
+	}
+
+	@Override
+	public Geometry getUnknownGeometry(Envelope area) {
+		if(perimeterGeometry.isEmpty()) return geometryFactory.createMultiPolygon(null);
+		return cellsGeometry(OccupancyGrid.UNKNOWN, area);
+	}
+
+	@Override
+	public Geometry getNearestUnknownRegion(Coordinate coordinate, double minArea) {
+		return frontier.nearest(coordinate, minArea);
+	}
+
+	@Override
+	public long getVersion() {
+		return version;
+	}
+
+	@Override
+	public Geometry getFreeGeometry() {
+		if(freeGeometry == null) freeGeometry = cellsGeometry(OccupancyGrid.FREE, null);
+		return freeGeometry;
+	}
+
+	@Override
+	public Geometry getFreePieces() {
+		if(freePieces == null){
+			for (Long key : changedFreeTiles) {
+				int column = (int) (key >> 32);
+				int row = (int) (long) key;
+				Geometry g = cellsGeometry(OccupancyGrid.FREE, new Envelope(column * tileSize, (column + 1) * tileSize, row * tileSize, (row + 1) * tileSize));
+				if(g.isEmpty()){
+					freeTiles.remove(key);
+				}else{
+					freeTiles.put(key, g);
+				}
+			}
+			changedFreeTiles.clear();
+			ArrayList<Geometry> polygons = new ArrayList<Geometry>();
+			for (Geometry g : freeTiles.values()) {
+				for (Object polygon : PolygonExtracter.getPolygons(g)) {
+					polygons.add((Geometry) polygon);
+				}
+			}
+			freePieces = geometryFactory.createGeometryCollection(polygons.toArray(new Geometry[polygons.size()]));
+		}
+		return freePieces;
+	}
+
+	/**
+	 * The free ground is counted in the polygons of its tiles, built again
+	 * only where the cells changed.
+	 */
+	@Override
+	public int getVertices(MapperMetrics.Layer layer) {
+		switch(layer){
+			case FREE:
+				return getFreePieces().getNumPoints();
+			case OBJECTS:
+				return objectsGeometry.getNumPoints();
+			default:
+				return perimeterGeometry.getNumPoints();
+		}
+	}
+
+	@Override
+	public Geometry getObjectsGeometry() {
+		return objectsGeometry;
+	}
+
+	@Override
+	public Geometry getPerimeterGeometry() {
+		return perimeterGeometry;
+	}
+
+	@Override
+	public OccupancyGrid getGrid() {
+		return grid;
+	}
+
+	/**
+	 * Builds the geometry of the cells in a state, by merging a rectangle for
+	 * each run of consecutive cells in a row.
+	 * @param state The cells state.
+	 * @param area Only the cells whose centers are in this area are taken, or
+	 * every cell if it's <code>null</code>.
+	 * @return The geometry of the cells.
+	 */
+	private Geometry cellsGeometry(byte state, Envelope area){
+		ArrayList<Geometry> runs = new ArrayList<Geometry>();
+		int size = grid.getSize();
+		double cellSize = grid.getCellSize();
+		int firstColumn = 0, endColumn = size, firstRow = 0, endRow = size;
+		if(area != null){
+			firstColumn = Math.max(0, firstCell(area.getMinX(), grid.getMinX()));
+			endColumn = Math.min(size, firstCell(area.getMaxX(), grid.getMinX()));
+			firstRow = Math.max(0, firstCell(area.getMinY(), grid.getMinY()));
+			endRow = Math.min(size, firstCell(area.getMaxY(), grid.getMinY()));
+		}
+		for (int row = firstRow; row < endRow; row++) {
+			int column = firstColumn;
+			while(column < endColumn){
+				if(grid.get(column, row) != state){
+					column++;
+					continue;
+				}
+				int first = column;
+				while(column < endColumn && grid.get(column, row) == state) column++;
+				double x0 = grid.getMinX() + first * cellSize;
+				double x1 = grid.getMinX() + column * cellSize;
+				double y0 = grid.getMinY() + row * cellSize;
+				double y1 = y0 + cellSize;
+				runs.add(geometryFactory.toGeometry(new Envelope(x0, x1, y0, y1)));
+			}
+		}
+		if(runs.isEmpty()) return geometryFactory.createMultiPolygon(null);
+		return UnaryUnionOp.union(runs, geometryFactory);
+	}
+
+	/**
+	 * Marks the tiles of an area as changed, so their free geometry is built
+	 * again on the next call to {@link #getFreePieces()}.
+	 * @param area The area whose cells changed.
+	 */
+	private void invalidateFreeTiles(Envelope area){
+		int firstColumn = (int) Math.floor(area.getMinX() / tileSize);
+		int lastColumn = (int) Math.floor(area.getMaxX() / tileSize);
+		int firstRow = (int) Math.floor(area.getMinY() / tileSize);
+		int lastRow = (int) Math.floor(area.getMaxY() / tileSize);
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				changedFreeTiles.add(key(column, row));
+			}
+		}
+		freePieces = null;
+	}
+
+	private static long key(int column, int row){
+		return ((long) column << 32) | (row & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @param value A x or y coordinate.
+	 * @param gridMin The minimum x or y of the grid.
+	 * @return The first column or row whose cells have their centers at or
+	 * after the coordinate.
+	 */
+	private int firstCell(double value, double gridMin){
+		return (int) Math.ceil((value - gridMin) / grid.getCellSize() - 0.5);
+	}
+}
@@ -0,0 +1,28 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Scores the headings the robot can take by the unknown ground it would sweep
+ * driving a few drive distances in each direction.
+ * @see Mapper
+ * @see Parameters#getHeadingScorerType()
+ */
+interface HeadingScorer {
+	/**
+	 * The length of the scored swaths, in drive distances.
+	 */
+	static final float REACH = 5;
+
+	/**
+	 * Scores candidate headings evenly spread from a first one.
+	 * @param origin The position of the robot.
+	 * @param firstHeading The heading of the first candidate, in degrees
+	 * counter-clockwise from the x axis.
+	 * @param resolution The angle between the candidates, in degrees.
+	 * @param scores Where the score of each candidate is written, one per
+	 * candidate. The scores grow with the unknown area swept, which is zero
+	 * if none is.
+	 */
+	void score(Coordinate origin, float firstHeading, float resolution, double[] scores);
+}
@@ -0,0 +1,93 @@
+package edu.berkeley.mapping;
+
+/**
+ * Histogram of times, in buckets of powers of two nanoseconds.
+ * The bucket <code>i</code> counts the times from <code>2^i</code> up to
+ * <code>2^(i+1)</code> nanoseconds, so recording a time is a few arithmetic
+ * operations and the histogram has a fixed size. The percentiles are known
+ * up to a factor of two; the count, the total and the maximum are exact.
+ * Not thread safe.
+ * @see MetricsRecorder
+ */
+public class LatencyHistogram {
+	private final long[] buckets = new long[64];
+
+	private long count;
+
+	private long totalNanos;
+
+	private long maxNanos;
+
+	LatencyHistogram() {
+	}
+
+	/**
+	 * @return A copy of this histogram.
+	 */
+	LatencyHistogram copy(){
+		LatencyHistogram copy = new LatencyHistogram();
+		System.arraycopy(buckets, 0, copy.buckets, 0, buckets.length);
+		copy.count = count;
+		copy.totalNanos = totalNanos;
+		copy.maxNanos = maxNanos;
+		return copy;
+	}
+
+	/**
+	 * @param nanos A time, in nanoseconds.
+	 */
+	void record(long nanos){
+		if(nanos < 1) nanos = 1;
+		buckets[63 - Long.numberOfLeadingZeros(nanos)]++;
+		count++;
+		totalNanos += nanos;
+		if(nanos > maxNanos) maxNanos = nanos;
+	}
+
+	/**
+	 * @return The number of times recorded.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return The sum of the times recorded, in nanoseconds.
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return The longest time recorded, in nanoseconds.
+	 */
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	/**
+	 * @return The mean of the times recorded, in nanoseconds, or zero if none was.
+	 */
+	public long getMeanNanos() {
+		return count == 0 ? 0 : totalNanos / count;
+	}
+
+	/**
+	 * @param fraction The fraction of the times, between 0 and 1.
+	 * @return The upper bound of the bucket where that fraction of the times
+	 * is reached, in nanoseconds, but never more than the maximum. Zero if no
+	 * time was recorded.
+	 */
+	public long getPercentileNanos(double fraction){
+		if(count == 0) return 0;
+		long rank = (long) Math.ceil(fraction * count);
+		long seen = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			seen += buckets[i];
+			if(seen >= rank && seen > 0){
+				return i >= 62 ? maxNanos : Math.min(maxNanos, (1L << (i + 1)) - 1);
+			}
+		}
+		return maxNanos;
+	}
+}
@@ -0,0 +1,217 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * An immutable view of the map, published by the mapper every time it sets
+ * a state.
+ * Readers in other threads take the latest snapshot without locking and
+ * get layers that are consistent with each other and with the state. The
+ * version only grows, so a reader can skip its work when the version didn't
+ * change since its last read.
+ * The layers are built by the mapper, in its thread, only when the map store
+ * changed, and shared by the snapshots until it changes again. To keep that
+ * cheap, the free ground isn't merged across the tiles of the map: it's a
+ * collection of the polygons of each tile, and only the tiles that changed
+ * are merged again. The geometries are shared and must not be modified.
+ * @see Mapper#getSnapshot()
+ */
+public class MapSnapshot {
+	/**
+	 * The layers of the map, as they were when they were built.
+	 */
+	public static class Layers {
+		/**
+		 * The version of the map store the layers were built from.
+		 */
+		private final long version;
+
+		private final Geometry freeGeometry;
+
+		private final Geometry objectsGeometry;
+
+		private final Geometry perimeterGeometry;
+
+		Layers(long version, Geometry freeGeometry, Geometry objectsGeometry, Geometry perimeterGeometry) {
+			this.version = version;
+			this.freeGeometry = freeGeometry;
+			this.objectsGeometry = objectsGeometry;
+			this.perimeterGeometry = perimeterGeometry;
+		}
+
+		/**
+		 * @return The version of the map store the layers were built from.
+		 * @see MapStore#getVersion()
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return The free ground, as a collection of the polygons of each
+		 * tile. Polygons of neighbouring tiles may share their edges.
+		 */
+		public Geometry getFreeGeometry() {
+			return freeGeometry;
+		}
+
+		/**
+		 * @return The objects on the ground.
+		 */
+		public Geometry getObjectsGeometry() {
+			return objectsGeometry;
+		}
+
+		/**
+		 * @return The perimeter.
+		 */
+		public Geometry getPerimeterGeometry() {
+			return perimeterGeometry;
+		}
+	}
+
+	/**
+	 * The number of snapshots published before this one.
+	 */
+	private final long version;
+
+	/**
+	 * The state of the algorithm.
+	 */
+	private final Mapper.State state;
+
+	/**
+	 * The event of the transition to the state, or <code>null</code> before
+	 * the first one.
+	 */
+	private final MappingEvent event;
+
+	/**
+	 * The layers of the map.
+	 */
+	private final Layers layers;
+
+	/**
+	 * The last path computed, or <code>null</code> if there's none.
+	 */
+	private final Geometry pathGeometry;
+
+	/**
+	 * The edges of the last roadmap computed, or <code>null</code> if there's none.
+	 */
+	private final Geometry edgesGeometry;
+
+	/**
+	 * The area inside the perimeter that's neither free nor an object.
+	 */
+	private final double unknownArea;
+
+	/**
+	 * The fraction of the area inside the perimeter that's already known.
+	 */
+	private final double coverageRatio;
+
+	MapSnapshot(long version, Mapper.State state, MappingEvent event, Layers layers, Geometry pathGeometry, Geometry edgesGeometry, double unknownArea, double coverageRatio) {
+		this.version = version;
+		this.state = state;
+		this.event = event;
+		this.layers = layers;
+		this.pathGeometry = pathGeometry;
+		this.edgesGeometry = edgesGeometry;
+		this.unknownArea = unknownArea;
+		this.coverageRatio = coverageRatio;
+	}
+
+	/**
+	 * @return The number of snapshots published before this one.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return The state of the algorithm.
+	 */
+	public Mapper.State getState() {
+		return state;
+	}
+
+	/**
+	 * @return The event of the transition to the state, or <code>null</code>
+	 * before the first one.
+	 */
+	public MappingEvent getEvent() {
+		return event;
+	}
+
+	/**
+	 * @return The version of the map store the layers were built from. The
+	 * layers don't need to be read again while it doesn't change.
+	 * @see MapStore#getVersion()
+	 */
+	public long getLayersVersion() {
+		return layers.getVersion();
+	}
+
+	/**
+	 * @return The layers of the map.
+	 */
+	public Layers getLayers() {
+		return layers;
+	}
+
+	/**
+	 * @return The free ground.
+	 * @see #getLayers()
+	 */
+	public Geometry getFreeGeometry() {
+		return getLayers().getFreeGeometry();
+	}
+
+	/**
+	 * @return The objects on the ground.
+	 * @see #getLayers()
+	 */
+	public Geometry getObjectsGeometry() {
+		return getLayers().getObjectsGeometry();
+	}
+
+	/**
+	 * @return The perimeter.
+	 * @see #getLayers()
+	 */
+	public Geometry getPerimeterGeometry() {
+		return getLayers().getPerimeterGeometry();
+	}
+
+	/**
+	 * @return The last path computed, or <code>null</code> if there's none.
+	 */
+	public Geometry getPathGeometry() {
+		return pathGeometry;
+	}
+
+	/**
+	 * @return The edges of the last roadmap computed, or <code>null</code> if
+	 * there's none.
+	 */
+	public Geometry getEdgesGeometry() {
+		return edgesGeometry;
+	}
+
+	/**
+	 * @return The area inside the perimeter that's neither free nor an
+	 * object, or zero if no perimeter was found yet.
+	 */
+	public double getUnknownArea() {
+		return unknownArea;
+	}
+
+	/**
+	 * @return The fraction of the area inside the perimeter that's already
+	 * known, or zero if no perimeter was found yet.
+	 */
+	public double getCoverageRatio() {
+		return coverageRatio;
+	}
+}
@@ -0,0 +1,135 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Storage for the layers of the map built by the mapper: the free ground, the
+ * objects on the ground and the perimeter of the area being mapped.
+ * @see Mapper
+ * @see Parameters#getMapStoreType()
+ */
+public interface MapStore {
+	/**
+	 * Adds an area where there's nothing on the ground.
+	 * @param swath The free area, usually the swath covered by the robot.
+	 */
+	public void addFree(Geometry swath);
+
+	/**
+	 * Adds an object found on the ground.
+	 * @param obstacle The object's area.
+	 */
+	public void addObstacle(Geometry obstacle);
+
+	/**
+	 * Adds the perimeter of the area being mapped.
+	 * @param perimeter The perimeter's area.
+	 */
+	public void addPerimeter(Geometry perimeter);
+
+	/**
+	 * Reduces the number of vertices of the free ground. The objects are
+	 * compacted by the mapper once, when they're found, so the objects of the
+	 * map, of the intersection tests and of the path planner stay the same.
+	 * @return The number of vertices before and after the compaction.
+	 */
+	public CompactionReport compact();
+
+	/**
+	 * @param coordinate The coordinate to be checked.
+	 * @return <code>true</code> if the coordinate is in the free ground.
+	 */
+	public boolean isFree(Coordinate coordinate);
+
+	/**
+	 * @param area The area to be checked.
+	 * @return <code>true</code> if the whole free ground is within the area.
+	 */
+	public boolean isFreeWithin(Geometry area);
+
+	/**
+	 * @param geometry The geometry to be checked.
+	 * @return <code>true</code> if the geometry intersects any object.
+	 */
+	public boolean intersectsObstacle(Geometry geometry);
+
+	/**
+	 * @return The area inside the perimeter that's neither free nor an object,
+	 * or zero if no perimeter is known.
+	 */
+	public double getUnknownArea();
+
+	/**
+	 * @return The fraction of the area inside the perimeter that's either free
+	 * or an object, or zero if no perimeter is known.
+	 */
+	public double getCoverageRatio();
+
+	/**
+	 * @return The geometry of the area inside the perimeter that's neither free
+	 * nor an object.
+	 */
+	public Geometry getUnknownGeometry();
+
+	/**
+	 * @param area The area of interest.
+	 * @return The unknown geometry around the area. It covers the unknown part
+	 * of the area, but may extend beyond it.
+	 */
+	public Geometry getUnknownGeometry(Envelope area);
+
+	/**
+	 * Finds the unknown region nearest to a coordinate, without computing the
+	 * whole unknown area.
+	 * @param coordinate The coordinate.
+	 * @param minArea Regions smaller than this are skipped.
+	 * @return The nearest unknown region, or <code>null</code> if there's none
+	 * large enough. Large regions may be split in pieces, and then the nearest
+	 * piece is returned, but the area of the whole region is what's compared.
+	 */
+	public Geometry getNearestUnknownRegion(Coordinate coordinate, double minArea);
+
+	/**
+	 * @return The grid the layers are rasterized in, kept up to date as they
+	 * change. Cells outside the perimeter are only marked once it's known.
+	 */
+	public OccupancyGrid getGrid();
+
+	/**
+	 * @return A number that changes every time a layer changes, so the layers
+	 * built for a version can be reused while it doesn't change.
+	 */
+	public long getVersion();
+
+	/**
+	 * @return The geometry of the free ground.
+	 */
+	public Geometry getFreeGeometry();
+
+	/**
+	 * @return The free ground as a collection of the polygons of each tile,
+	 * which aren't merged across the tile edges. Only the tiles that changed
+	 * since the last call are merged again, so it's cheap to take after
+	 * every change, unlike the whole free geometry.
+	 */
+	public Geometry getFreePieces();
+
+	/**
+	 * @param layer A layer.
+	 * @return The number of vertices of the layer, counted without merging
+	 * its tiles.
+	 */
+	public int getVertices(MapperMetrics.Layer layer);
+
+	/**
+	 * @return The geometry of the objects on the ground.
+	 */
+	public Geometry getObjectsGeometry();
+
+	/**
+	 * @return The geometry of the perimeter.
+	 */
+	public Geometry getPerimeterGeometry();
+}
@@ -4,15 +4,14 @@ import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateSequence;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
-import com.vividsolutions.jts.geom.LineSegment;
 import com.vividsolutions.jts.geom.LineString;
-import com.vividsolutions.jts.geom.MultiLineString;
 import com.vividsolutions.jts.geom.MultiPoint;
 import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
 import com.vividsolutions.jts.geom.TopologyException;
 import com.vividsolutions.jts.geom.impl.CoordinateArraySequence;
+import com.vividsolutions.jts.geom.util.PolygonExtracter;
 import com.vividsolutions.jts.operation.buffer.BufferOp;
 import com.vividsolutions.jts.operation.buffer.BufferParameters;
 import com.vividsolutions.jts.shape.random.RandomPointsBuilder;
@@ -23,13 +22,36 @@ import com.vividsolutions.jtstest.testrunner.GeometryOperationLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.Random;
+import java.util.List;
 
 /**
  * The class that implements the mapping algorithm.
  * @version 1.0
  */
 public class Mapper {
+	private static final RingLog.Message EVENT_MESSAGE = RingLog.message(RingLog.Category.STATE, "Event {0} at ({1}, {2}).", MappingEvent.Type.class);
+	private static final RingLog.Message STATE_MESSAGE = RingLog.message(RingLog.Category.STATE, "State = {0}", State.class);
+	private static final RingLog.Message POINT_NOT_VISITED_MESSAGE = RingLog.message(RingLog.Category.CONTOUR, "Point ({0}, {1}) NOT visited.");
+	private static final RingLog.Message POINT_VISITED_MESSAGE = RingLog.message(RingLog.Category.STATE, "Point ({0}, {1}) VISITED.");
+	private static final RingLog.Message PERIMETER_FOUND_MESSAGE = RingLog.message(RingLog.Category.CONTOUR, "Perimeter found.");
+	private static final RingLog.Message PERIMETER_MESSAGE = RingLog.message(RingLog.Category.CONTOUR, "Perimeter: {0} polygons, {1} vertices.");
+	private static final RingLog.Message COMPACTION_MESSAGE = RingLog.message(RingLog.Category.COVERAGE, "Compaction: {0} -> {1} vertices.");
+	private static final RingLog.Message COVERAGE_MESSAGE = RingLog.message(RingLog.Category.COVERAGE, "Unknown area: {0}, coverage ratio: {1}, robot area: {2}.");
+	private static final RingLog.Message INTERSECTS_MESSAGE = RingLog.message(RingLog.Category.PATH, "Line to ({0}, {1}) intersects an object.");
+	private static final RingLog.Message NOT_INTERSECTS_MESSAGE = RingLog.message(RingLog.Category.PATH, "Line to ({0}, {1}) DOES NOT intersect an object.");
+	private static final RingLog.Message NO_PATH_MESSAGE = RingLog.message(RingLog.Category.PATH, "No path to the destination ({0}, {1}).");
+	private static final RingLog.Message RESTORED_MESSAGE = RingLog.message(RingLog.Category.STATE, "Restored in state {0}, snapshot {1}.", State.class);
+	private static final RingLog.Message RESUMED_MESSAGE = RingLog.message(RingLog.Category.STATE, "Resumed in state {0} at ({1}, {2}).", State.class);
+	private static final RingLog.Message DESTINATION_TOPOLOGY_MESSAGE = RingLog.message(RingLog.Category.GEOMETRY, "Topology exception calculating the destination from ({0}, {1}).");
+	
+	/**
+	 * The number of free ground swaths between two samples of the vertices of
+	 * the layers, when the free ground is never compacted. Otherwise they're
+	 * sampled after each compaction.
+	 * @see MapperMetrics#onLayerVertices(edu.berkeley.mapping.MapperMetrics.Layer, int) 
+	 */
+	public static final int LAYER_SAMPLE_INTERVAL = 50;
+	
 	/**
 	 * Enumeration that defines all possible states of mapping algorithm.
 	 */
@@ -84,9 +106,11 @@ public class Mapper {
 	private Commander commander;
 	
 	/**
-	 * The algorithm parameters.
+	 * The algorithm parameters. They can't be replaced, since the random
+	 * generator, the map store, the path planner and the heading scorer are
+	 * built from them when the mapper is created.
 	 */
-	private Parameters parameters = new Parameters();
+	private final Parameters parameters;
 	
 	/**
 	 * The current state of the algorithm.
@@ -99,36 +123,90 @@ public class Mapper {
 	private final ArrayList<StateChangeListener> stateChangeListeners = new ArrayList<StateChangeListener>();
 	
 	/**
-	 * A random number generator to be used temporarily in <code>calculateDriveHeadingVariation</code> method.
-	 * @see #calculateDriveHeadingVariation() 
+	 * List of listeners of the events reported.
+	 */
+	private final ArrayList<MappingEventListener> mappingEventListeners = new ArrayList<MappingEventListener>();
+	
+	/**
+	 * The listener of the measures, or <code>null</code> if nothing is measured.
+	 */
+	private volatile MapperMetrics metrics;
+	
+	/**
+	 * The only source of random numbers of the mapping process, seeded with
+	 * the seed of the parameters, so the same seed and events give the same
+	 * commands. It gives the heading variation when no heading sweeps unknown
+	 * ground or the last one was blocked, and the random points.
+	 * @see #calculateDriveHeadingVariation(MappingEvent) 
+	 * @see Parameters#getRandomSeed() 
+	 * @see MapperCheckpoint
 	 */
-	private final Random random = new Random();
+	private final RestorableRandom random;
 	
 	/**
-	 * The geometry factory for the mapping process.
+	 * The geometry factory for the mapping process. Its precision model is
+	 * fixed to the snap precision of the parameters, so every geometry built
+	 * and every overlay is snap rounded to it.
+	 * @see Parameters#getSnapPrecision() 
 	 */
-	private final GeometryFactory geometryFactory = new GeometryFactory();
+	private final GeometryFactory geometryFactory;
 	
 	/**
 	 * A random points builder
 	 */
-	private RandomPointsBuilder randomPointsBuilder = new RandomPointsBuilder(geometryFactory);
+	private RandomPointsBuilder randomPointsBuilder;
+	
+	/**
+	 * Builds the free ground swaths between events.
+	 */
+	private final SwathGenerator swathGenerator;
+	
+	/**
+	 * The store of the map layers: the objects on the ground, the free ground,
+	 * that is, the areas where there's nothing on, and the perimeter.
+	 * @see Parameters#getMapStoreType() 
+	 */
+	private MapStore mapStore;
+	
+	/**
+	 * Plans the paths around the objects.
+	 * @see Parameters#getPathPlannerType() 
+	 */
+	private PathPlanner pathPlanner;
+	
+	/**
+	 * Scores the headings by the unknown ground they sweep.
+	 * @see Parameters#getHeadingScorerType() 
+	 * @see Parameters#getHeadingResolution() 
+	 */
+	private final HeadingScorer headingScorer;
 	
 	/**
-	 * The geometry object to represent the objects on the ground.
+	 * Compacts the objects when they're found.
+	 * @see Parameters#getCompactionTolerance() 
 	 */
-	private Geometry objectsGeometry = geometryFactory.createMultiPolygon(null);
+	private final GeometryCompactor compactor;
 	
 	/**
-	 * The geometry object to represent the free ground, that is, the areas where there's nothing on.
+	 * The worker threads of the parallel parts of this mapper.
+	 * @see Parameters#getWorkerThreads() 
 	 */
-	private Geometry freeGeometry = geometryFactory.createMultiPolygon(null);
+	private final WorkerPool workerPool;
 	
-	private Geometry perimeterGeometry = geometryFactory.createMultiPolygon(null);
+	private Geometry pathGeometry;
 	
-	private Geometry pathGeometry = geometryFactory.createGeometry(null);
+	private Geometry edgesGeometry;
 	
-	private Geometry edgesGeometry = geometryFactory.createGeometry(null);
+	/**
+	 * The latest map snapshot, replaced every time a state is set.
+	 */
+	private volatile MapSnapshot snapshot;
+	
+	/**
+	 * The layers of the last snapshot, reused by the next ones while the map
+	 * store doesn't change.
+	 */
+	private MapSnapshot.Layers layers;
 	
 	/**
 	 * Last event reported.
@@ -148,15 +226,35 @@ public class Mapper {
 	 */
 	private float headingVariation;
 	
+	/**
+	 * Where the robot was when the last heading was picked.
+	 */
+	private final Coordinate headingOrigin = new Coordinate(Double.NaN, Double.NaN);
+	
 
 	private ArrayList<Coordinate> pathPoints = new ArrayList<Coordinate>();
 	
+	/**
+	 * The number of free ground swaths added since the last compaction, or
+	 * since the vertices of the layers were last sampled if the free ground
+	 * is never compacted.
+	 * @see Parameters#getCompactionInterval() 
+	 */
+	private int swathsSinceCompaction = 0;
+	
+	/**
+	 * If the mapper was restored from a checkpoint and no event was reported
+	 * since, so a START event resumes the state.
+	 * @see #restore(edu.berkeley.mapping.MapperCheckpoint) 
+	 */
+	private boolean restored;
+	
 	/**
 	 * 
 	 * @param commander The commander object for the mapper.
 	 */
 	public Mapper(Commander commander) {
-		this.commander = commander;
+		this(commander, new Parameters());
 	}
 	
 	/**
@@ -165,25 +263,190 @@ public class Mapper {
 	 * @param parameters The parameters for the algorithm.
 	 */
 	public Mapper(Commander commander, Parameters parameters){
-		this(commander);
+		this.commander = commander;
 		this.parameters = parameters;
+		this.geometryFactory = new GeometryFactory(RobustOverlay.precisionModel(parameters.getSnapPrecision()));
+		this.random = new RestorableRandom(parameters.getRandomSeed());
+		this.randomPointsBuilder = new SeededRandomPointsBuilder(geometryFactory, random);
+		this.swathGenerator = new SwathGenerator(geometryFactory, parameters.getRunnerWidth());
+		this.workerPool = new WorkerPool(parameters.getWorkerThreads());
+		this.compactor = new GeometryCompactor(geometryFactory, parameters);
+		this.mapStore = createMapStore();
+		this.pathPlanner = createPathPlanner();
+		this.headingScorer = createHeadingScorer();
+		this.snapshot = createSnapshot(0, null);
+	}
+	
+	/**
+	 * @return A new map store of the type defined in the parameters.
+	 */
+	private MapStore createMapStore(){
+		switch(parameters.getMapStoreType()){
+			case GRID:
+				return new GridMapStore(geometryFactory, parameters);
+			default:
+				return new VectorMapStore(geometryFactory, parameters, workerPool);
+		}
+	}
+	
+	/**
+	 * @param version The version of the snapshot.
+	 * @param event The event of the last transition.
+	 * @return A snapshot of the current map.
+	 */
+	private MapSnapshot createSnapshot(long version, MappingEvent event){
+		return new MapSnapshot(version, state, event, getLayers(),
+				pathGeometry, edgesGeometry, mapStore.getUnknownArea(), mapStore.getCoverageRatio());
+	}
+	
+	/**
+	 * Builds the layers for a snapshot, in the mapping thread, if the map
+	 * store changed since the last ones. Only the free ground of the tiles
+	 * that changed is merged again.
+	 * @return The current layers of the map.
+	 * @see MapStore#getFreePieces() 
+	 */
+	private MapSnapshot.Layers getLayers(){
+		long version = mapStore.getVersion();
+		if(layers == null || layers.getVersion() != version){
+			layers = new MapSnapshot.Layers(version,
+					mapStore.getFreePieces(), mapStore.getObjectsGeometry(), mapStore.getPerimeterGeometry());
+		}
+		return layers;
+	}
+	
+	/**
+	 * @return A new path planner of the type defined in the parameters.
+	 */
+	private PathPlanner createPathPlanner(){
+		switch(parameters.getPathPlannerType()){
+			case RANDOM_ROADMAP:
+				return new RandomRoadmapPlanner(geometryFactory, mapStore, parameters, random);
+			default:
+				return new VisibilityGraphPlanner(geometryFactory, parameters);
+		}
+	}
+	
+	/**
+	 * @return A new heading scorer of the type defined in the parameters.
+	 */
+	private HeadingScorer createHeadingScorer(){
+		switch(parameters.getHeadingScorerType()){
+			case RAY_CAST:
+				return new RayCastHeadingScorer(mapStore, parameters);
+			default:
+				return new OverlayHeadingScorer(geometryFactory, mapStore, parameters, workerPool);
+		}
 	}
 	
 	private void addFreeGeometry(Geometry freeGeometry){
-		this.freeGeometry = this.freeGeometry.union(freeGeometry);
+		long start = startTiming();
+		mapStore.addFree(freeGeometry);
+		endTiming(MapperMetrics.Operation.UNION, start);
+		swathsSinceCompaction++;
+		int interval = parameters.getCompactionInterval();
+		if(swathsSinceCompaction >= (interval > 0 ? interval : LAYER_SAMPLE_INTERVAL)){
+			swathsSinceCompaction = 0;
+			if(interval > 0){
+				CompactionReport report = mapStore.compact();
+				RingLog.log(COMPACTION_MESSAGE, report.getVerticesBefore(), report.getVerticesAfter());
+			}
+			sampleLayerVertices();
+		}
+	}
+	
+	/**
+	 * Gives the number of vertices of each layer to the metrics, if any.
+	 */
+	private void sampleLayerVertices(){
+		MapperMetrics metrics = this.metrics;
+		if(metrics == null) return;
+		for (MapperMetrics.Layer layer : MapperMetrics.Layer.values()) {
+			metrics.onLayerVertices(layer, mapStore.getVertices(layer));
+		}
+	}
+	
+	/**
+	 * @param geometry A geometry, or <code>null</code>.
+	 * @return The polygons of the geometry.
+	 */
+	private static List<Polygon> polygons(Geometry geometry){
+		ArrayList<Polygon> polygons = new ArrayList<Polygon>();
+		if(geometry != null){
+			for (Object polygon : PolygonExtracter.getPolygons(geometry)) {
+				polygons.add((Polygon) polygon);
+			}
+		}
+		return polygons;
+	}
+	
+	/**
+	 * Builds the geometry of an object from the points of its contour, snap
+	 * rounded to the precision model, which also fixes self intersections.
+	 * A contour with too few points, or one that collapses when rounded,
+	 * becomes a thin object along its points.
+	 * @param points The closed contour.
+	 * @return The object's geometry.
+	 */
+	private Geometry createObstacleGeometry(ArrayList<Coordinate> points){
+		Coordinate[] coordinates = points.toArray(new Coordinate[points.size()]);
+		if(coordinates.length >= 4){
+			Geometry obstacle = RobustOverlay.reduce(geometryFactory.createPolygon(coordinates));
+			if(!obstacle.isEmpty()) return obstacle;
+		}
+		return geometryFactory.createLineString(coordinates).buffer(parameters.getSnapPrecision());
 	}
 	
+	/**
+	 * Adds an object to the map and to the path planner. It's compacted first,
+	 * so both get the same geometry and the objects layer never needs to be
+	 * compacted again, which would leave the planner out of date.
+	 * @param obejctGeometry The object's geometry.
+	 */
 	private void addObjectGeometry(Geometry obejctGeometry){
-		objectsGeometry = objectsGeometry.union(obejctGeometry);
+		long start = startTiming();
+		Geometry compacted = compactor.compact(obejctGeometry);
+		//A thin object may be all sliver, but it's still in the way.
+		if(!compacted.isEmpty()) obejctGeometry = compacted;
+		mapStore.addObstacle(obejctGeometry);
+		endTiming(MapperMetrics.Operation.UNION, start);
+		pathPlanner.addObstacle(obejctGeometry);
+		sampleLayerVertices();
 	}
 	
 	/**
 	 * This method must be called by the "robot side" implementation to report
 	 * any relevant event to the mapper.
+	 * It does all the geometry work in the calling thread, so the event
+	 * pipeline should be used to report events from the sensor threads.
+	 * It's synchronized with taking a checkpoint and restoring one.
 	 * @param event The event reported.
+	 * @see EventPipeline
 	 */
-	public void reportEvent(MappingEvent event){
-		System.out.println("State = " + stateName(state));
+	public synchronized void reportEvent(MappingEvent event){
+		for (MappingEventListener mappingEventListener : mappingEventListeners) {
+			mappingEventListener.onEventReported(event);
+		}
+		MapperMetrics metrics = this.metrics;
+		if(metrics == null){
+			handleEvent(event);
+		} else {
+			State reportedState = state;
+			long start = System.nanoTime();
+			handleEvent(event);
+			metrics.onEventHandled(reportedState, event.getType(), System.nanoTime() - start);
+		}
+	}
+	
+	private void handleEvent(MappingEvent event){
+		RingLog.log(EVENT_MESSAGE, event.getType().ordinal(), event.getX(), event.getY());
+		RingLog.log(STATE_MESSAGE, state.ordinal());
+		boolean resuming = restored && state != State.IDLE && event.getType() == MappingEvent.Type.START;
+		restored = false;
+		if(resuming){
+			resume(event);
+			return;
+		}
 		switch(state){
 			case IDLE:
 				switch(event.getType()){
@@ -206,10 +469,12 @@ public class Mapper {
 						break;
 					}
 					case COLLISION:
+						//Checked before the swath that ends at the point is added.
+						boolean notVisited = pointNotVisited(event);
 						Geometry g = generateDistanceReachedGeometry(event);
-						freeGeometry = freeGeometry.union(g);
-						if (pointNotVisited(event)) {
-							System.out.println("Point NOT visited.");
+						addFreeGeometry(g);
+						if (notVisited) {
+							RingLog.log(POINT_NOT_VISITED_MESSAGE, event.getX(), event.getY());
 							contourStartPoint.setOrdinate(Coordinate.X, event.getX());
 							contourStartPoint.setOrdinate(Coordinate.Y, event.getY());
 							obstaclePoints.clear();
@@ -220,8 +485,8 @@ public class Mapper {
 							obstaclePoints.add(new Coordinate(event.getX(), event.getY()));
 							setState(State.CONTOUR_OBSTACLE, event);
 						} else {
-							System.out.println("Point VISITED.");
-							if (perimeterGeometry.isEmpty()) { //I think the perimeterGeometry,isEmpty() always return at this point... ???
+							RingLog.log(POINT_VISITED_MESSAGE, event.getX(), event.getY());
+							if (getPerimeterGeometry().isEmpty()) { //I think the perimeterGeometry,isEmpty() always return at this point... ???
 								headingVariation = calculateDriveHeadingVariation(event);
 								setState(State.SEARCH_OBSTACLE, event);
 							} else { //I think this is unreachable
@@ -250,12 +515,13 @@ public class Mapper {
 						break;
 					case COLLISION:
 						Geometry g = generateDistanceReachedGeometry(event);
-						freeGeometry = freeGeometry.union(g);
+						addFreeGeometry(g);
 						Coordinate possibleEndPoint = new Coordinate(event.getX(), event.getY());
 						obstaclePoints.add(new Coordinate(event.getX(), event.getY()));
 						if(possibleEndPoint.distance(contourStartPoint) <= parameters.getContourFinishPointRadiusThreshold()){
 							obstaclePoints.add(obstaclePoints.get(0));
-							Polygon obstacle = geometryFactory.createPolygon(obstaclePoints.toArray(new Coordinate[obstaclePoints.size()]));
+							long start = startTiming();
+							Geometry obstacle = createObstacleGeometry(obstaclePoints);
 							Point p = geometryFactory.createPoint(possibleEndPoint);
 							
 							//
@@ -264,23 +530,30 @@ public class Mapper {
 							//bufferParameters.setEndCapStyle(BufferParameters.CAP_FLAT);
 							BufferOp bufferOp = new BufferOp(obstacle, bufferParameters);
 							Geometry buf = bufferOp.getResultGeometry(parameters.getRunnerWidth() * 2);
+							endTiming(MapperMetrics.Operation.BUFFER, start);
 							
-							if(freeGeometry.within(buf)){
-								System.out.println("Perimeter found.");
+							start = startTiming();
+							boolean perimeterFound = mapStore.isFreeWithin(buf);
+							endTiming(MapperMetrics.Operation.WITHIN, start);
+							if(perimeterFound){
+								RingLog.log(PERIMETER_FOUND_MESSAGE);
+								start = startTiming();
 								Geometry buf2 = bufferOp.getResultGeometry(parameters.getRunnerWidth());
-								perimeterGeometry = perimeterGeometry.union(buf2);
+								endTiming(MapperMetrics.Operation.BUFFER, start);
+								start = startTiming();
+								mapStore.addPerimeter(buf2);
+								endTiming(MapperMetrics.Operation.UNION, start);
+								sampleLayerVertices();
 							}else{
 								addObjectGeometry(obstacle);
 							}
 							
-							System.out.println(perimeterGeometry.getNumGeometries());
-							System.out.println(perimeterGeometry.toString());
-							if (perimeterGeometry.isEmpty()) {
-								System.out.println("Perimeter is empty.");
+							Geometry perimeter = getPerimeterGeometry();
+							RingLog.log(PERIMETER_MESSAGE, perimeter.getNumGeometries(), perimeter.getNumPoints());
+							if (perimeter.isEmpty()) {
 								headingVariation = calculateDriveHeadingVariation(event);
 								setState(State.SEARCH_OBSTACLE, event);
 							} else {
-								System.out.println("Perimeter is not empty.");								
 								pathPoints = calculatePathPoints(event);
 								if (pathPoints == null) {
 									setState(State.FINISHED, event);
@@ -299,18 +572,20 @@ public class Mapper {
 			case FOLLOW_PATH:
 				switch(event.getType()){
 					case COLLISION:
+						//Checked before the swath that ends at the point is added.
+						boolean notVisited = pointNotVisited(event);
 						Geometry g = generateDistanceReachedGeometry(event);
-						freeGeometry = freeGeometry.union(g);
-						if (pointNotVisited(event)) {
-							System.out.println("In FOLLOW_PATH, COLLISION, point NOT visited.");
+						addFreeGeometry(g);
+						if (notVisited) {
+							RingLog.log(POINT_NOT_VISITED_MESSAGE, event.getX(), event.getY());
 							contourStartPoint.setOrdinate(Coordinate.X, event.getX());
 							contourStartPoint.setOrdinate(Coordinate.Y, event.getY());
 							obstaclePoints.clear();
 							obstaclePoints.add(new Coordinate(event.getX(), event.getY()));
 							setState(State.CONTOUR_OBSTACLE, event);
 						} else {
-							System.out.println("In FOLLOW_PATH, COLLISION, point visited.");
-							if (perimeterGeometry.isEmpty()) {//I think perimeterGeometry.isEmpty() alwas returns false at this point.
+							RingLog.log(POINT_VISITED_MESSAGE, event.getX(), event.getY());
+							if (getPerimeterGeometry().isEmpty()) {//I think perimeterGeometry.isEmpty() alwas returns false at this point.
 								headingVariation = calculateDriveHeadingVariation(event);//I think this is unreachable.
 								setState(State.SEARCH_OBSTACLE, event);
 							} else {
@@ -324,21 +599,19 @@ public class Mapper {
 						}
 						break;
 					case POINT_REACHED:
-						System.out.println("In FOLLOW_PATH, POINT_REACHED.");
 						g = generateDistanceReachedGeometry(event);
-						freeGeometry = freeGeometry.union(g);
+						addFreeGeometry(g);
 						break;
 					case POINTS_COMPLETED:
-						System.out.println("In FOLLOW_PATH, POINTS_COMPLETED.");
 						g = generateDistanceReachedGeometry(event);
-						freeGeometry = freeGeometry.union(g);
-						if (perimeterGeometry.isEmpty()) {//I think perimeterGeometry.isEmpty() alwas returns false at this point.
+						addFreeGeometry(g);
+						if (getPerimeterGeometry().isEmpty()) {//I think perimeterGeometry.isEmpty() alwas returns false at this point.
 							//I think this is unreachable.
 							headingVariation = calculateDriveHeadingVariation(event);
 							setState(State.SEARCH_OBSTACLE, event);
 						} else {
 							pathPoints = calculatePathPoints(event);
-							setState(State.FOLLOW_PATH, event);
+							setState(pathPoints == null ? State.FINISHED : State.FOLLOW_PATH, event);
 						}
 						break;
 					default:
@@ -364,12 +637,13 @@ public class Mapper {
 				break;
 			case SEARCH_OBSTACLE:
 				commander.drive(headingVariation, parameters.getCommanderDriveDistance());
-				if(!perimeterGeometry.isEmpty()){ //Temporary for tests
+				if(!getPerimeterGeometry().isEmpty()){ //Temporary for tests
 					//I think this block isn't necessary anymore.
-					RandomPointsBuilder builder = new RandomPointsBuilder(geometryFactory);
-					builder.setExtent(perimeterGeometry);
-					builder.setNumPoints(4);
-					Geometry points = builder.getGeometry();
+					long start = startTiming();
+					randomPointsBuilder.setExtent(getPerimeterGeometry());
+					randomPointsBuilder.setNumPoints(4);
+					Geometry points = randomPointsBuilder.getGeometry();
+					endTiming(MapperMetrics.Operation.RANDOM_POINTS, start);
 					LinkedList<Coordinate> coordinates = new LinkedList<Coordinate>(Arrays.asList(points.getCoordinates()));
 					coordinates.add(new Coordinate(0, 0));
 					commander.drive(coordinates);
@@ -383,50 +657,126 @@ public class Mapper {
 					commander.drive(pathPoints);
 				break;
 		}
+		snapshot = createSnapshot(snapshot.getVersion() + 1, event);
 		for (StateChangeListener stateChangeListener : stateChangeListeners) {
 			stateChangeListener.onStateChange(oldState, state, event);
 		}
 	}
 	
 	/**
-	 * Calculate the heading variation to be passed to drive method of the commander. 
-	 * @return Temporarily, it just returns a random number between 0 and 360 degrees.
+	 * Gives again the command of the restored state, from where the robot
+	 * is now. The next swath starts there.
+	 * @param event The START event, with the position of the robot.
+	 */
+	private void resume(MappingEvent event){
+		RingLog.log(RESUMED_MESSAGE, state.ordinal(), event.getX(), event.getY());
+		MappingEvent from = lastEvent == null ? event : new MappingEvent(lastEvent.getType(), event.getX(), event.getY(), lastEvent.getAngle());
+		setState(state, from);
+	}
+	
+	/**
+	 * Takes a checkpoint of the whole state of the mapper. It copies the
+	 * contour and path points and the layers, which may have to be built
+	 * first; the checkpoint is encoded when it's written. It waits for the
+	 * event being handled, so it's best taken in the mapping thread, from a
+	 * state change listener or through the event pipeline.
+	 * @return The checkpoint.
+	 * @see MapperCheckpoint#writeInBackground(java.io.File) 
+	 * @see EventPipeline#requestCheckpoint(java.io.File) 
+	 */
+	public synchronized MapperCheckpoint checkpoint(){
+		return new MapperCheckpoint(state, snapshot.getVersion(), lastEvent, headingVariation,
+				new Coordinate(headingOrigin), new Coordinate(contourStartPoint),
+				copy(obstaclePoints), pathPoints == null ? null : copy(pathPoints),
+				swathsSinceCompaction, random.getState(),
+				mapStore.getFreeGeometry(), mapStore.getObjectsGeometry(), mapStore.getPerimeterGeometry(),
+				pathGeometry, edgesGeometry);
+	}
+	
+	/**
+	 * Restores the state of a checkpoint to this mapper, which must be new and
+	 * have the parameters of the checkpointed one. The layers are added to
+	 * the map store and the objects to the planner, so their indexes are
+	 * built again; a random roadmap is sampled again. No command is given:
+	 * the next START event, with the position of the robot, resumes the
+	 * restored state. Any other event goes on as if there was no interruption.
+	 * @param checkpoint The checkpoint.
+	 * @throws IllegalStateException If the mapper was already used.
+	 * @see MapperCheckpoint#read(java.io.File, edu.berkeley.mapping.Parameters) 
+	 */
+	public synchronized void restore(MapperCheckpoint checkpoint){
+		if(state != State.IDLE || snapshot.getVersion() != 0) throw new IllegalStateException("Only a new mapper can be restored.");
+		long start = startTiming();
+		if(checkpoint.freeGeometry != null && !checkpoint.freeGeometry.isEmpty()) mapStore.addFree(checkpoint.freeGeometry);
+		List<Polygon> obstacles = polygons(checkpoint.objectsGeometry);
+		for (Polygon obstacle : obstacles) {
+			mapStore.addObstacle(obstacle);
+		}
+		if(checkpoint.perimeterGeometry != null && !checkpoint.perimeterGeometry.isEmpty()) mapStore.addPerimeter(checkpoint.perimeterGeometry);
+		endTiming(MapperMetrics.Operation.UNION, start);
+		for (Polygon obstacle : obstacles) {
+			pathPlanner.addObstacle(obstacle);
+		}
+		state = checkpoint.state;
+		lastEvent = checkpoint.lastEvent;
+		headingVariation = checkpoint.headingVariation;
+		headingOrigin.setCoordinate(checkpoint.headingOrigin);
+		contourStartPoint.setCoordinate(checkpoint.contourStartPoint);
+		obstaclePoints.clear();
+		obstaclePoints.addAll(Arrays.asList(copy(checkpoint.obstaclePoints)));
+		pathPoints = checkpoint.pathPoints == null ? null : new ArrayList<Coordinate>(Arrays.asList(copy(checkpoint.pathPoints)));
+		swathsSinceCompaction = checkpoint.swathsSinceCompaction;
+		random.setState(checkpoint.randomState);
+		pathGeometry = checkpoint.pathGeometry;
+		edgesGeometry = checkpoint.edgesGeometry;
+		restored = true;
+		snapshot = createSnapshot(checkpoint.snapshotVersion, lastEvent);
+		RingLog.log(RESTORED_MESSAGE, state.ordinal(), checkpoint.snapshotVersion);
+	}
+	
+	private static Coordinate[] copy(List<Coordinate> coordinates){
+		Coordinate[] copy = new Coordinate[coordinates.size()];
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = new Coordinate(coordinates.get(i));
+		}
+		return copy;
+	}
+	
+	private static Coordinate[] copy(Coordinate[] coordinates){
+		return copy(Arrays.asList(coordinates));
+	}
+	
+	/**
+	 * Calculate the heading variation to be passed to drive method of the commander.
+	 * The robot turns away from what it hit, between 90 and 270 degrees, to
+	 * the heading that sweeps the most unknown ground. The heading of the
+	 * commander and the variation are both in degrees counter-clockwise, the
+	 * heading from the x axis of the map, like the heading scorer's.
+	 * @return The variation of the heading, counter-clockwise. It's random
+	 * when no heading sweeps unknown ground, or when the robot didn't get
+	 * away from where it picked the last heading, since that heading is
+	 * blocked and would be picked again.
 	 * @see Commander#drive(float) 
 	 * @see Commander#drive(float, float) 
+	 * @see Commander#getCurrentHeading() 
 	 */
 	private float calculateDriveHeadingVariation(MappingEvent event){
-		/*float maxHeading = 0;
-		double maxArea = 0;
-		for (float i = 0; i < 359; i++) {
-			Coordinate dest = new Coordinate(
-				event.getX() + Math.cos(i*Math.PI/180f) * 5 * parameters.getCommanderDriveDistance(),
-				event.getY() + Math.sin(i*Math.PI/180f) * 5 * parameters.getCommanderDriveDistance()
-			);
-			Coordinate origin = new Coordinate(
-				event.getX(),
-				event.getY()
-			);
-			LineSegment lineSegment = new LineSegment(origin, dest);
-			LineString lineString = lineSegment.toGeometry(geometryFactory);
-			BufferParameters bufferParameters = new BufferParameters();
-			bufferParameters.setEndCapStyle(BufferParameters.CAP_FLAT);
-			BufferOp bufferOp = new BufferOp(lineString, bufferParameters);
-			Geometry g = bufferOp.getResultGeometry(parameters.getRunnerWidth());
-			if (!perimeterGeometry.isEmpty()){
-				g = g.intersection(perimeterGeometry);
-			}
-			g = g.difference(freeGeometry);
-			double area = g.getArea();
-			if (area > maxArea) {
-				maxArea = area;
-				maxHeading = i;
+		Coordinate origin = new Coordinate(event.getX(), event.getY());
+		boolean blocked = origin.distance(headingOrigin) < parameters.getRunnerWidth();
+		headingOrigin.setCoordinate(origin);
+		if(!blocked){
+			float resolution = parameters.getHeadingResolution();
+			double[] scores = new double[(int) Math.floor(180 / resolution) + 1];
+			float firstHeading = commander.getCurrentHeading() + 90;
+			long start = startTiming();
+			headingScorer.score(origin, firstHeading, resolution, scores);
+			endTiming(MapperMetrics.Operation.SCORE_HEADINGS, start);
+			int best = -1;
+			for (int i = 0; i < scores.length; i++) {
+				if(scores[i] > 0 && (best < 0 || scores[i] > scores[best])) best = i;
 			}
+			if(best >= 0) return 90 + best * resolution;
 		}
-		System.out.println("maxArea = " + maxArea);
-		System.out.println("maxHeading = " + maxHeading);
-		float current = commander.getCurrentHeading();
-		current = current - maxHeading;
-		return current;*/
 		return 90 + random.nextFloat()*180;
 	}
 	
@@ -440,55 +790,34 @@ public class Mapper {
 		return new LineString(coords, geometryFactory);
 	}
 	
-	private MultiLineString generateEdgesGeometry(ArrayList<Coordinate[]> edges) {
-		LineString[] lineStrings = new LineString[edges.size()];
-		for (int i = 0; i < edges.size(); i++) {
-			Coordinate[] coordinates = {edges.get(i)[0], edges.get(i)[1]};
-			CoordinateSequence coords = new CoordinateArraySequence(coordinates);
-			LineString line = new LineString(coords, geometryFactory);
-			lineStrings[i] = line;
-		}
-		return new MultiLineString(lineStrings, geometryFactory);
-	}
-	
-	private Geometry filterGeometry(Geometry g, MappingEvent event) {
-		double totalArea = perimeterGeometry.getArea() - objectsGeometry.getArea();
-		double threshold = totalArea / 100;
-		Coordinate coordinate = new Coordinate(event.getX(), event.getY());
-		Point point = geometryFactory.createPoint(coordinate);
-		Geometry r = geometryFactory.createMultiPolygon(null);
-		//double largerArea = 0;
-		double shortestDistance = Double.MAX_VALUE;
-		Geometry betterGeometry = null;
-		for (int i = 0; i < g.getNumGeometries(); i++) {
-			Geometry temp = g.getGeometryN(i);
-			if (temp.getGeometryType().equals("Polygon")) {
-				if (temp.getArea() > threshold) {
-					//if (temp.getArea() > largerArea) {
-					if (temp.distance(point) < shortestDistance) {
-						//largerArea = temp.getArea();
-						shortestDistance = temp.distance(point);
-						betterGeometry = temp;
-					}
-					//r = r.union(temp);
-				}
-			}
-		}
-		r = betterGeometry;
-		return r;
+	/**
+	 * @return The area below which unknown regions aren't worth visiting: a
+	 * hundredth of the area inside the perimeter that's not an object.
+	 */
+	private double minUnknownRegionArea() {
+		double totalArea = getPerimeterGeometry().getArea() - getObjectsGeometry().getArea();
+		return totalArea / 100;
 	}
 	
-	private Coordinate calculateDestination(MappingEvent event) {
+	/**
+	 * Picks a destination in the nearest unknown region that's large enough.
+	 * Package private so the benchmark can measure it.
+	 * @param event The event reported at the position of the robot.
+	 * @return The destination, or <code>null</code> if no region is left.
+	 */
+	Coordinate calculateDestination(MappingEvent event) {
 		try {
-			Geometry undiscoveredArea = perimeterGeometry.difference(freeGeometry);
-			undiscoveredArea = undiscoveredArea.difference(objectsGeometry);
 			Coordinate coordinate = new Coordinate(event.getX(), event.getY());
 			Point point = geometryFactory.createPoint(coordinate);
 			randomPointsBuilder.setNumPoints(10);
-			Geometry ext = filterGeometry(undiscoveredArea, event);
+			long start = startTiming();
+			Geometry ext = mapStore.getNearestUnknownRegion(coordinate, minUnknownRegionArea());
+			endTiming(MapperMetrics.Operation.DIFFERENCE, start);
 			if (ext == null) return null;
+			start = startTiming();
 			randomPointsBuilder.setExtent(ext);
 			MultiPoint points = (MultiPoint) randomPointsBuilder.getGeometry();
+			endTiming(MapperMetrics.Operation.RANDOM_POINTS, start);
 			Point betterPoint = (Point) points.getGeometryN(0);
 			double shortestDistance = Double.MAX_VALUE;
 			for (int i = 0; i < points.getNumGeometries(); i++) {
@@ -500,134 +829,10 @@ public class Mapper {
 			Coordinate coordinate2 = betterPoint.getCoordinate();
 			return coordinate2;
 		} catch (TopologyException e) {
-			System.err.println("Topology exception.");
-			return new Coordinate(0,0);
-		}
-	}
-	
-	private ArrayList<Coordinate> generateRandomPoints(int n) {
-		randomPointsBuilder.setNumPoints(n);
-		randomPointsBuilder.setExtent(perimeterGeometry);
-		MultiPoint points = (MultiPoint) randomPointsBuilder.getGeometry();
-		ArrayList<Coordinate> arrayOfCoord = new ArrayList<Coordinate>();
-		for (int i = 0; i < points.getNumGeometries(); i++) {
-			Point p = (Point) points.getGeometryN(i);
-			arrayOfCoord.add(p.getCoordinate());
-		}
-		return arrayOfCoord;
-	}
-	
-	private Coordinate selectVertice(ArrayList<Coordinate> Q,
-			ArrayList<Coordinate> R, double[] dist, boolean[] visited) {
-		
-		double leastDistance = Double.MAX_VALUE;
-		Coordinate leastElement = null;
-		for (Coordinate v : Q) {
-			int vIndex = R.indexOf(v);
-			if (dist[vIndex] < leastDistance && !visited[vIndex]) {
-				leastDistance = dist[vIndex];
-				leastElement = v;
-			}
-		}
-		if (leastElement == null) {
-			System.err.println("leastElement == null");
-		}
-		return leastElement;
-	}
-	
-	private ArrayList<Coordinate> getNeighbors(Coordinate u, ArrayList<Coordinate[]> R) {
-		ArrayList<Coordinate> neighbors = new ArrayList<Coordinate>();
-		for (Coordinate[] tuple : R) {
-			if (tuple.length == 2) {
-				if (tuple[0].equals(u)) {
-					if (!neighbors.contains(tuple[1])) {
-						neighbors.add(tuple[1]);
-					}
-				}
-			}
-		}
-		return neighbors;
-	}
-	
-	private double distance(Coordinate u, Coordinate v) {
-		return u.distance(v);
-	}
-	
-	private ArrayList<Coordinate> makePath(Coordinate origin, Coordinate destination) {
-		ArrayList<Coordinate> randomPoints = generateRandomPoints(10);
-		randomPoints.add(origin);
-		randomPoints.add(destination);
-		ArrayList<Coordinate[]> edges = new ArrayList<Coordinate[]>();
-		for (int i = 0; i < randomPoints.size(); i++) {
-			for (int j = 0; j < randomPoints.size(); j++) {
-				if (i == j) continue;
-				Coordinate[] coordinates = new Coordinate[2];
-				coordinates[0] = randomPoints.get(i);
-				coordinates[1] = randomPoints.get(j);
-				CoordinateSequence coords = new CoordinateArraySequence(coordinates);
-				LineString line = new LineString(coords, geometryFactory);
-				if (!line.intersects(objectsGeometry)) {
-					edges.add(coordinates);
-				}
-			}
+			//The map is snap rounded, so this shouldn't happen. Staying in place makes the mapper plan again on the next event.
+			RingLog.log(DESTINATION_TOPOLOGY_MESSAGE, event.getX(), event.getY());
+			return new Coordinate(event.getX(), event.getY());
 		}
-		edgesGeometry = generateEdgesGeometry(edges);
-		double[] dist = new double[randomPoints.size()];
-		boolean[] visited = new boolean[randomPoints.size()];
-		int[] previous = new int[randomPoints.size()];
-		for (int i = 0; i < randomPoints.size(); i++) {
-			dist[i] = Double.MAX_VALUE;
-			visited[i] = false;
-			previous[i] = -1;
-		}
-		dist[10] = 0;
-		ArrayList<Coordinate> Q = new ArrayList<Coordinate>();
-		Q.add(origin);
-		
-		while (!Q.isEmpty()) {
-			System.out.println("Here");
-			Coordinate u = selectVertice(Q, randomPoints, dist, visited);
-			if (u == null) break;
-			int uIndex = randomPoints.indexOf(u);
-			System.out.println("Selected: " + uIndex);
-			Q.remove(u);
-			visited[uIndex] = true;
-			ArrayList<Coordinate> neighbors = getNeighbors(u, edges);
-			System.out.print("Neighbors: ");
-			for (Coordinate c : neighbors) {
-				System.out.print(randomPoints.indexOf(c) + ",");
-			}
-			for (int i = 0; i < neighbors.size(); i++) {
-				Coordinate v = neighbors.get(i);
-				int vIndex = randomPoints.indexOf(v);
-				double alt = dist[uIndex] + distance(u, v);
-				System.out.println("Dist to " + vIndex + ": "+ alt);
-				if (alt < dist[vIndex]) {
-					dist[vIndex] = alt;
-					previous[vIndex] = uIndex;
-					if (!visited[vIndex]) {
-						Q.add(randomPoints.get(vIndex));
-					}
-				}
-				
-			}
-		}
-		
-		ArrayList<Coordinate> path = new ArrayList<Coordinate>();
-		Coordinate u = destination;
-		int uIndex = randomPoints.indexOf(u);
-		for (int i = 0; i < previous.length; i++) {
-			System.out.println("[" + i + "] = " + previous[i]);
-		}
-		System.out.println("uIndex = " + uIndex);
-		while (previous[uIndex] != -1) {
-			System.out.println(uIndex + "->");
-			path.add(0,u);
-			u = randomPoints.get(previous[uIndex]);
-			uIndex = randomPoints.indexOf(u);
-		}
-		path.add(0, u);
-		return path;
 	}
 	
 	private ArrayList<Coordinate> calculatePathPoints(MappingEvent event) {
@@ -638,11 +843,24 @@ public class Mapper {
 		CoordinateSequence coords = new CoordinateArraySequence(coordinates);
 		LineString line = new LineString(coords, geometryFactory);
 		ArrayList<Coordinate> list;
-		if (line.intersects(objectsGeometry)) {
-			System.out.println("Intersects.");
-			list = makePath(origin, destination);
+		long start = startTiming();
+		boolean intersects = mapStore.intersectsObstacle(line);
+		endTiming(MapperMetrics.Operation.INTERSECTS, start);
+		if (intersects) {
+			RingLog.log(INTERSECTS_MESSAGE, destination.x, destination.y);
+			start = startTiming();
+			List<Coordinate> path = pathPlanner.plan(origin, destination);
+			endTiming(MapperMetrics.Operation.PLAN, start);
+			edgesGeometry = pathPlanner.getEdgesGeometry();
+			if (path == null) {
+				RingLog.log(NO_PATH_MESSAGE, destination.x, destination.y);
+				list = new ArrayList<Coordinate>();
+				list.add(destination);
+			} else {
+				list = new ArrayList<Coordinate>(path);
+			}
 		} else {
-			System.out.println("DOES NOT intersect.");
+			RingLog.log(NOT_INTERSECTS_MESSAGE, destination.x, destination.y);
 			list = new ArrayList<Coordinate>();
 			list.add(destination);
 		}
@@ -652,20 +870,22 @@ public class Mapper {
 	
 	private boolean pointNotVisited(MappingEvent event) {
 		Coordinate coordinate = new Coordinate(event.getX(), event.getY());
-		Point p = geometryFactory.createPoint(coordinate);
-		return !p.within(freeGeometry);
+		long start = startTiming();
+		boolean free = mapStore.isFree(coordinate);
+		endTiming(MapperMetrics.Operation.WITHIN, start);
+		return !free;
 	}
 	
 	/**
 	 * Tells is the mapping is done.
+	 * Package private so the benchmark can measure it.
 	 * @return <code>true</code> if the mapping is done and <code>false</code> otherwise. It's just returning false currently.
 	 */
-	private boolean isDone(){
-		if(perimeterGeometry.isEmpty()) return false;
-		double area = perimeterGeometry.difference(freeGeometry.union(objectsGeometry)).getArea();
+	boolean isDone(){
+		if(getPerimeterGeometry().isEmpty()) return false;
+		double area = mapStore.getUnknownArea();
 		//area = area / ((1/4)*Math.PI * getParameters().getRunnerWidth()*getParameters().getRunnerWidth());
-		System.out.println("Unknown area: " + area);
-		System.out.println("Robot area: " + (((1d/4d) * Math.PI * getParameters().getRunnerWidth()*getParameters().getRunnerWidth())));
+		RingLog.log(COVERAGE_MESSAGE, area, mapStore.getCoverageRatio(), (1d/4d) * Math.PI * getParameters().getRunnerWidth()*getParameters().getRunnerWidth());
 		return false;
 	}
 
@@ -681,29 +901,76 @@ public class Mapper {
 		return parameters;
 	}
 
-	public void setParameters(Parameters parameters) {
-		this.parameters = parameters;
+	private Geometry generateDistanceReachedGeometry(MappingEvent event){
+		long start = startTiming();
+		Geometry swath = swathGenerator.generate(lastEvent.getX(), lastEvent.getY(), event.getX(), event.getY());
+		endTiming(MapperMetrics.Operation.BUFFER, start);
+		return swath;
 	}
 	
-	private Geometry generateDistanceReachedGeometry(MappingEvent event){
-		LineSegment lineSegment = new LineSegment(lastEvent.getX(), lastEvent.getY(), event.getX(), event.getY());
-		LineString lineString = lineSegment.toGeometry(geometryFactory);
-		BufferParameters bufferParameters = new BufferParameters();
-		bufferParameters.setEndCapStyle(BufferParameters.CAP_FLAT);
-		BufferOp bufferOp = new BufferOp(lineString, bufferParameters);
-		return bufferOp.getResultGeometry(parameters.getRunnerWidth());
+	/**
+	 * @return The time an operation starts, or zero if nothing is measured.
+	 */
+	private long startTiming(){
+		return metrics == null ? 0 : System.nanoTime();
+	}
+	
+	/**
+	 * Tells the metrics listener the time of an operation, if it's measured.
+	 * @param operation The operation.
+	 * @param start The time it started.
+	 * @see #startTiming() 
+	 */
+	private void endTiming(MapperMetrics.Operation operation, long start){
+		MapperMetrics metrics = this.metrics;
+		if(metrics != null && start != 0) metrics.onOperation(operation, System.nanoTime() - start);
 	}
 
 	public Geometry getObjectsGeometry() {
-		return objectsGeometry;
+		return mapStore.getObjectsGeometry();
 	}
 
+	/**
+	 * Builds the free geometry from the swaths reported since the last call, if any.
+	 * @return The geometry of the free ground.
+	 */
 	public Geometry getFreeGeometry() {
-		return freeGeometry;
+		return mapStore.getFreeGeometry();
 	}
 
 	public Geometry getPerimeterGeometry() {
-		return perimeterGeometry;
+		return mapStore.getPerimeterGeometry();
+	}
+	
+	/**
+	 * @return The area inside the perimeter that's neither free nor an object,
+	 * or zero if no perimeter was found yet.
+	 */
+	public double getUnknownArea() {
+		return mapStore.getUnknownArea();
+	}
+	
+	/**
+	 * @return The fraction of the area inside the perimeter that's already
+	 * known, or zero if no perimeter was found yet.
+	 */
+	public double getCoverageRatio() {
+		return mapStore.getCoverageRatio();
+	}
+	
+	/**
+	 * @return The store of the map layers.
+	 */
+	public MapStore getMapStore() {
+		return mapStore;
+	}
+	
+	/**
+	 * Safe to be called from any thread, without locking.
+	 * @return The map as it was when the last state was set.
+	 */
+	public MapSnapshot getSnapshot() {
+		return snapshot;
 	}
 	
 	public Geometry getPathGeometry() {
@@ -722,6 +989,28 @@ public class Mapper {
 		if(!stateChangeListeners.contains(listener)) stateChangeListeners.add(listener);
 	}
 	
+	public void addMappingEventListener(MappingEventListener listener){
+		if(!mappingEventListeners.contains(listener)) mappingEventListeners.add(listener);
+	}
+	
+	/**
+	 * @return The listener of the measures, or <code>null</code> if nothing is measured.
+	 */
+	public MapperMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Safe to be called from any thread; it's taken into account from the
+	 * next operation on.
+	 * @param metrics The listener of the measures, or <code>null</code> to
+	 * measure nothing, which is the default.
+	 * @see MetricsRecorder
+	 */
+	public void setMetrics(MapperMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
 	private static void mappingEventNotExpected(MappingEvent event){
 		System.err.println("Mapping event of type " + event.getType().name() + " not expected. Point: (" + event.getX() + ", " + event.getY() + ").");
 	}
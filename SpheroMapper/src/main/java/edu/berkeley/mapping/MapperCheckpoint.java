@@ -0,0 +1,370 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.InStream;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The whole state of a mapper at some moment, so a long session can go on
+ * after the application was stopped: the layers of the map, the state of
+ * the algorithm with the contour being followed and the path, and the
+ * state of the random generator. It doesn't change after it's taken.
+ * <p>
+ * Taking a checkpoint copies the layers and a few points, in the mapping
+ * thread; encoding and writing it is done in the thread that writes it,
+ * usually the checkpoint writer thread. The file is written next to the
+ * target, synced to the disk and renamed over it, so the last complete
+ * checkpoint is never lost to a write that's cut. It's read back by mapping
+ * it in memory.
+ * <p>
+ * The binary layout of the file is:
+ * <ul>
+ *	<li>int: the magic number, byte: the version of the format.</li>
+ *	<li>byte: the ordinal of the state, long: the version of the snapshot.</li>
+ *	<li>byte: 1 if there's a last event, then its type ordinal as a byte and
+ *	x, y and angle as floats.</li>
+ *	<li>float: the heading variation, doubles: x and y of the heading
+ *	origin and of the contour start point.</li>
+ *	<li>int: the number of contour points, then x and y of each as doubles.</li>
+ *	<li>int: the number of path points, or -1 if there's no path, then x and
+ *	y of each as doubles.</li>
+ *	<li>int: the swaths since the last compaction, long: the state of the
+ *	random generator.</li>
+ *	<li>The free ground, the objects, the perimeter, the path and the
+ *	roadmap edges, each as an int with the length of its WKB, 0 if it's
+ *	empty or -1 if there's none, followed by the WKB.</li>
+ * </ul>
+ * @see Mapper#checkpoint()
+ * @see Mapper#restore(edu.berkeley.mapping.MapperCheckpoint)
+ */
+public class MapperCheckpoint {
+	/**
+	 * The first bytes of a checkpoint.
+	 */
+	private static final int MAGIC = 0x534d4350;
+
+	private static final int VERSION = 1;
+
+	/**
+	 * The thread that writes the checkpoints in background, created on the
+	 * first write. A single thread, so the checkpoints of a file are written
+	 * in the order they were taken.
+	 */
+	private static ExecutorService writer;
+
+	final Mapper.State state;
+
+	final long snapshotVersion;
+
+	final MappingEvent lastEvent;
+
+	final float headingVariation;
+
+	final Coordinate headingOrigin;
+
+	final Coordinate contourStartPoint;
+
+	final Coordinate[] obstaclePoints;
+
+	final Coordinate[] pathPoints;
+
+	final int swathsSinceCompaction;
+
+	final long randomState;
+
+	final Geometry freeGeometry;
+
+	final Geometry objectsGeometry;
+
+	final Geometry perimeterGeometry;
+
+	final Geometry pathGeometry;
+
+	final Geometry edgesGeometry;
+
+	MapperCheckpoint(Mapper.State state, long snapshotVersion, MappingEvent lastEvent, float headingVariation,
+			Coordinate headingOrigin, Coordinate contourStartPoint, Coordinate[] obstaclePoints, Coordinate[] pathPoints,
+			int swathsSinceCompaction, long randomState, Geometry freeGeometry, Geometry objectsGeometry,
+			Geometry perimeterGeometry, Geometry pathGeometry, Geometry edgesGeometry) {
+		this.state = state;
+		this.snapshotVersion = snapshotVersion;
+		this.lastEvent = lastEvent;
+		this.headingVariation = headingVariation;
+		this.headingOrigin = headingOrigin;
+		this.contourStartPoint = contourStartPoint;
+		this.obstaclePoints = obstaclePoints;
+		this.pathPoints = pathPoints;
+		this.swathsSinceCompaction = swathsSinceCompaction;
+		this.randomState = randomState;
+		this.freeGeometry = freeGeometry;
+		this.objectsGeometry = objectsGeometry;
+		this.perimeterGeometry = perimeterGeometry;
+		this.pathGeometry = pathGeometry;
+		this.edgesGeometry = edgesGeometry;
+	}
+
+	/**
+	 * @return The state of the algorithm.
+	 */
+	public Mapper.State getState() {
+		return state;
+	}
+
+	/**
+	 * @return The geometry of the free ground.
+	 */
+	public Geometry getFreeGeometry() {
+		return freeGeometry;
+	}
+
+	/**
+	 * @return The geometry of the objects on the ground.
+	 */
+	public Geometry getObjectsGeometry() {
+		return objectsGeometry;
+	}
+
+	/**
+	 * @return The geometry of the perimeter.
+	 */
+	public Geometry getPerimeterGeometry() {
+		return perimeterGeometry;
+	}
+
+	/**
+	 * Writes the checkpoint in the calling thread.
+	 * @param file The file, replaced if it exists.
+	 * @throws IOException If the file can't be written.
+	 */
+	public void write(File file) throws IOException{
+		File temporary = new File(file.getPath() + ".tmp");
+		FileOutputStream fileOut = new FileOutputStream(temporary);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+		try {
+			write(out);
+			out.flush();
+			//The rename mustn't reach the disk before the content.
+			fileOut.getFD().sync();
+		} finally {
+			out.close();
+		}
+		if(!temporary.renameTo(file)){
+			//Some file systems don't rename over an existing file. The old one
+			//is moved aside, not deleted, until the new one is in place.
+			File previous = new File(file.getPath() + ".bak");
+			previous.delete();
+			if(file.exists() && !file.renameTo(previous)) throw new IOException("Can't rename " + file + " to " + previous);
+			if(!temporary.renameTo(file)){
+				previous.renameTo(file);
+				throw new IOException("Can't rename " + temporary + " to " + file);
+			}
+			previous.delete();
+		}
+	}
+
+	/**
+	 * Writes the checkpoint in the checkpoint writer thread.
+	 * @param file The file, replaced if it exists.
+	 * @return The pending write, which fails with the error writing, if any.
+	 * The error is also printed.
+	 */
+	public Future<?> writeInBackground(final File file){
+		return getWriter().submit(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				try {
+					write(file);
+					return null;
+				} catch (IOException e) {
+					System.err.println("Error writing the checkpoint " + file + ": " + e.getMessage());
+					throw e;
+				}
+			}
+		});
+	}
+
+	private void write(DataOutputStream out) throws IOException{
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeByte(state.ordinal());
+		out.writeLong(snapshotVersion);
+		out.writeBoolean(lastEvent != null);
+		if(lastEvent != null){
+			out.writeByte(lastEvent.getType().ordinal());
+			out.writeFloat(lastEvent.getX());
+			out.writeFloat(lastEvent.getY());
+			out.writeFloat(lastEvent.getAngle());
+		}
+		out.writeFloat(headingVariation);
+		writeCoordinate(out, headingOrigin);
+		writeCoordinate(out, contourStartPoint);
+		writeCoordinates(out, obstaclePoints);
+		writeCoordinates(out, pathPoints);
+		out.writeInt(swathsSinceCompaction);
+		out.writeLong(randomState);
+		WKBWriter wkbWriter = new WKBWriter();
+		writeGeometry(out, wkbWriter, freeGeometry);
+		writeGeometry(out, wkbWriter, objectsGeometry);
+		writeGeometry(out, wkbWriter, perimeterGeometry);
+		writeGeometry(out, wkbWriter, pathGeometry);
+		writeGeometry(out, wkbWriter, edgesGeometry);
+	}
+
+	private static void writeCoordinate(DataOutputStream out, Coordinate coordinate) throws IOException{
+		out.writeDouble(coordinate.x);
+		out.writeDouble(coordinate.y);
+	}
+
+	private static void writeCoordinates(DataOutputStream out, Coordinate[] coordinates) throws IOException{
+		if(coordinates == null){
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(coordinates.length);
+		for (Coordinate coordinate : coordinates) {
+			writeCoordinate(out, coordinate);
+		}
+	}
+
+	private static void writeGeometry(DataOutputStream out, WKBWriter wkbWriter, Geometry geometry) throws IOException{
+		if(geometry == null){
+			out.writeInt(-1);
+		} else if(geometry.isEmpty()){
+			out.writeInt(0);
+		} else {
+			byte[] wkb = wkbWriter.write(geometry);
+			out.writeInt(wkb.length);
+			out.write(wkb);
+		}
+	}
+
+	/**
+	 * Reads a checkpoint by mapping the file in memory, so the geometries are
+	 * decoded straight from the pages of the file.
+	 * @param file The file.
+	 * @param parameters The parameters of the mapper it's restored to, which
+	 * give the precision model of the geometries.
+	 * @return The checkpoint.
+	 * @throws IOException If the file can't be read, or it isn't a checkpoint
+	 * of this version.
+	 */
+	public static MapperCheckpoint read(File file, Parameters parameters) throws IOException{
+		GeometryFactory geometryFactory = new GeometryFactory(RobustOverlay.precisionModel(parameters.getSnapPrecision()));
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return read(buffer, geometryFactory);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Checkpoint cut short: " + file);
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	private static MapperCheckpoint read(ByteBuffer in, GeometryFactory geometryFactory) throws IOException{
+		if(in.getInt() != MAGIC) throw new IOException("Not a checkpoint.");
+		int version = in.get() & 0xff;
+		if(version != VERSION) throw new IOException("Checkpoint version " + version + " not supported.");
+		Mapper.State state = Mapper.State.values()[index(in.get(), Mapper.State.values().length)];
+		long snapshotVersion = in.getLong();
+		MappingEvent lastEvent = null;
+		if(in.get() != 0){
+			MappingEvent.Type type = MappingEvent.Type.values()[index(in.get(), MappingEvent.Type.values().length)];
+			lastEvent = new MappingEvent(type, in.getFloat(), in.getFloat(), in.getFloat());
+		}
+		float headingVariation = in.getFloat();
+		Coordinate headingOrigin = readCoordinate(in);
+		Coordinate contourStartPoint = readCoordinate(in);
+		Coordinate[] obstaclePoints = readCoordinates(in);
+		Coordinate[] pathPoints = readCoordinates(in);
+		int swathsSinceCompaction = in.getInt();
+		long randomState = in.getLong();
+		WKBReader wkbReader = new WKBReader(geometryFactory);
+		Geometry freeGeometry = readGeometry(in, wkbReader, geometryFactory);
+		Geometry objectsGeometry = readGeometry(in, wkbReader, geometryFactory);
+		Geometry perimeterGeometry = readGeometry(in, wkbReader, geometryFactory);
+		Geometry pathGeometry = readGeometry(in, wkbReader, geometryFactory);
+		Geometry edgesGeometry = readGeometry(in, wkbReader, geometryFactory);
+		return new MapperCheckpoint(state, snapshotVersion, lastEvent, headingVariation, headingOrigin, contourStartPoint,
+				obstaclePoints, pathPoints, swathsSinceCompaction, randomState,
+				freeGeometry, objectsGeometry, perimeterGeometry, pathGeometry, edgesGeometry);
+	}
+
+	private static int index(byte ordinal, int length) throws IOException{
+		int index = ordinal & 0xff;
+		if(index >= length) throw new IOException("Not a checkpoint.");
+		return index;
+	}
+
+	private static Coordinate readCoordinate(ByteBuffer in){
+		return new Coordinate(in.getDouble(), in.getDouble());
+	}
+
+	private static Coordinate[] readCoordinates(ByteBuffer in) throws IOException{
+		int length = in.getInt();
+		if(length < 0) return null;
+		if(length > in.remaining() / 16) throw new IOException("Not a checkpoint.");
+		Coordinate[] coordinates = new Coordinate[length];
+		for (int i = 0; i < length; i++) {
+			coordinates[i] = readCoordinate(in);
+		}
+		return coordinates;
+	}
+
+	private static Geometry readGeometry(final ByteBuffer in, WKBReader wkbReader, GeometryFactory geometryFactory) throws IOException{
+		int length = in.getInt();
+		if(length < 0) return null;
+		if(length == 0) return geometryFactory.createGeometryCollection(null);
+		if(length > in.remaining()) throw new BufferUnderflowException();
+		int end = in.position() + length;
+		try {
+			Geometry geometry = wkbReader.read(new InStream() {
+				@Override
+				public void read(byte[] buf) {
+					in.get(buf);
+				}
+			});
+			if(in.position() != end) throw new IOException("Not a checkpoint.");
+			return geometry;
+		} catch (ParseException e) {
+			throw new IOException("Not a checkpoint: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return The executor of the checkpoint writer thread.
+	 */
+	private static synchronized ExecutorService getWriter(){
+		if(writer == null){
+			writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "MapperCheckpoint");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return writer;
+	}
+}
@@ -0,0 +1,89 @@
+package edu.berkeley.mapping;
+
+/**
+ * Interface for the listener of the measures of a mapper.
+ * All the methods are called in the thread handling the events, and they
+ * should return quickly. When the mapper has no metrics listener nothing is
+ * measured, so the mapper doesn't even read the clock.
+ * @see Mapper#setMetrics(edu.berkeley.mapping.MapperMetrics)
+ * @see MetricsRecorder
+ */
+public interface MapperMetrics {
+	/**
+	 * The geometry operations the mapper measures. Each one is measured where
+	 * the mapper asks the map store, the planner or a builder for it, so it
+	 * includes what they do around the JTS operation.
+	 */
+	public static enum Operation{
+		/**
+		 * Adding a swath, an object or the perimeter to the map.
+		 */
+		UNION,
+		/**
+		 * Finding the nearest unknown region, which takes the free ground and
+		 * the objects away from the perimeter.
+		 */
+		DIFFERENCE,
+		/**
+		 * Building a swath, an object from its contour, or the buffers around
+		 * an object when its contour is closed.
+		 */
+		BUFFER,
+		/**
+		 * Checking if a point or an area is within the free ground.
+		 */
+		WITHIN,
+		/**
+		 * Checking if the straight line to the destination intersects an
+		 * object.
+		 */
+		INTERSECTS,
+		/**
+		 * Building random points.
+		 */
+		RANDOM_POINTS,
+		/**
+		 * Planning a path around the objects.
+		 */
+		PLAN,
+		/**
+		 * Scoring the candidate headings.
+		 */
+		SCORE_HEADINGS
+	}
+
+	/**
+	 * The layers of the map.
+	 */
+	public static enum Layer{
+		FREE,
+		OBJECTS,
+		PERIMETER
+	}
+
+	/**
+	 * Called after the mapper handled an event.
+	 * @param state The state of the mapper when the event was reported.
+	 * @param type The type of the event.
+	 * @param nanos The time it took, in nanoseconds.
+	 */
+	public void onEventHandled(Mapper.State state, MappingEvent.Type type, long nanos);
+
+	/**
+	 * Called after each geometry operation.
+	 * @param operation The operation.
+	 * @param nanos The time it took, in nanoseconds.
+	 */
+	public void onOperation(Operation operation, long nanos);
+
+	/**
+	 * Called for each layer, in the thread that reports the events, after
+	 * the free ground is compacted, or every
+	 * {@link Mapper#LAYER_SAMPLE_INTERVAL} swaths if it's never compacted,
+	 * and after an object or the perimeter is added.
+	 * @param layer The layer.
+	 * @param vertices The number of vertices of the layer.
+	 * @see MapStore#getVertices(edu.berkeley.mapping.MapperMetrics.Layer)
+	 */
+	public void onLayerVertices(Layer layer, int vertices);
+}
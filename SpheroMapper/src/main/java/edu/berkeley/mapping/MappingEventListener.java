@@ -0,0 +1,15 @@
+package edu.berkeley.mapping;
+
+/**
+ * Interface for the listener of the events reported to the mapper.
+ * @see Mapper#addMappingEventListener(edu.berkeley.mapping.MappingEventListener) 
+ */
+public interface MappingEventListener {
+	/**
+	 * Called in the thread reporting the event, before the mapper handles it.
+	 * The commands the mapper gives while handling it come after this call and
+	 * before the call for the next event.
+	 * @param event The event reported.
+	 */
+	public void onEventReported(MappingEvent event);
+}
@@ -0,0 +1,59 @@
+package edu.berkeley.mapping;
+
+/**
+ * Metrics listener that keeps a histogram of the handling times by state, by
+ * event type and by geometry operation, and the vertex counts of the layers.
+ * The mapping thread records and any thread can take a snapshot.
+ * @see Mapper#setMetrics(edu.berkeley.mapping.MapperMetrics)
+ */
+public class MetricsRecorder implements MapperMetrics {
+	private final LatencyHistogram[] stateLatencies = histograms(Mapper.State.values().length);
+
+	private final LatencyHistogram[] eventLatencies = histograms(MappingEvent.Type.values().length);
+
+	private final LatencyHistogram[] operationLatencies = histograms(Operation.values().length);
+
+	private final int[] vertices = new int[Layer.values().length];
+
+	private final int[] maxVertices = new int[Layer.values().length];
+
+	@Override
+	public synchronized void onEventHandled(Mapper.State state, MappingEvent.Type type, long nanos) {
+		stateLatencies[state.ordinal()].record(nanos);
+		eventLatencies[type.ordinal()].record(nanos);
+	}
+
+	@Override
+	public synchronized void onOperation(Operation operation, long nanos) {
+		operationLatencies[operation.ordinal()].record(nanos);
+	}
+
+	@Override
+	public synchronized void onLayerVertices(Layer layer, int vertices) {
+		this.vertices[layer.ordinal()] = vertices;
+		if(vertices > maxVertices[layer.ordinal()]) maxVertices[layer.ordinal()] = vertices;
+	}
+
+	/**
+	 * @return A copy of the measures so far.
+	 */
+	public synchronized MetricsSnapshot snapshot(){
+		return new MetricsSnapshot(copy(stateLatencies), copy(eventLatencies), copy(operationLatencies), vertices.clone(), maxVertices.clone());
+	}
+
+	private static LatencyHistogram[] histograms(int length){
+		LatencyHistogram[] histograms = new LatencyHistogram[length];
+		for (int i = 0; i < length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+		return histograms;
+	}
+
+	private static LatencyHistogram[] copy(LatencyHistogram[] histograms){
+		LatencyHistogram[] copy = new LatencyHistogram[histograms.length];
+		for (int i = 0; i < histograms.length; i++) {
+			copy[i] = histograms[i].copy();
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,97 @@
+package edu.berkeley.mapping;
+
+import java.io.PrintStream;
+
+/**
+ * The measures of a mapper at some moment. It doesn't change after it's
+ * taken.
+ * @see MetricsRecorder#snapshot()
+ */
+public class MetricsSnapshot {
+	private final LatencyHistogram[] stateLatencies;
+
+	private final LatencyHistogram[] eventLatencies;
+
+	private final LatencyHistogram[] operationLatencies;
+
+	private final int[] vertices;
+
+	private final int[] maxVertices;
+
+	MetricsSnapshot(LatencyHistogram[] stateLatencies, LatencyHistogram[] eventLatencies, LatencyHistogram[] operationLatencies, int[] vertices, int[] maxVertices) {
+		this.stateLatencies = stateLatencies;
+		this.eventLatencies = eventLatencies;
+		this.operationLatencies = operationLatencies;
+		this.vertices = vertices;
+		this.maxVertices = maxVertices;
+	}
+
+	/**
+	 * @param state A state.
+	 * @return The times handling the events reported in that state.
+	 */
+	public LatencyHistogram getStateLatency(Mapper.State state){
+		return stateLatencies[state.ordinal()];
+	}
+
+	/**
+	 * @param type An event type.
+	 * @return The times handling the events of that type.
+	 */
+	public LatencyHistogram getEventLatency(MappingEvent.Type type){
+		return eventLatencies[type.ordinal()];
+	}
+
+	/**
+	 * @param operation A geometry operation.
+	 * @return The times of that operation.
+	 */
+	public LatencyHistogram getOperationLatency(MapperMetrics.Operation operation){
+		return operationLatencies[operation.ordinal()];
+	}
+
+	/**
+	 * @param layer A layer of the map.
+	 * @return The number of vertices of the layer in the last sample.
+	 */
+	public int getVertices(MapperMetrics.Layer layer){
+		return vertices[layer.ordinal()];
+	}
+
+	/**
+	 * @param layer A layer of the map.
+	 * @return The largest number of vertices of the layer sampled.
+	 */
+	public int getMaxVertices(MapperMetrics.Layer layer){
+		return maxVertices[layer.ordinal()];
+	}
+
+	/**
+	 * Prints a table of the measures, with the times in microseconds. Only
+	 * what happened at least once is printed.
+	 * @param out Where the table is printed.
+	 */
+	public void dump(PrintStream out){
+		out.println("what,count,total_us,mean_us,p50_us,p90_us,p99_us,max_us");
+		for (Mapper.State state : Mapper.State.values()) {
+			dump(out, "state " + state.name(), getStateLatency(state));
+		}
+		for (MappingEvent.Type type : MappingEvent.Type.values()) {
+			dump(out, "event " + type.name(), getEventLatency(type));
+		}
+		for (MapperMetrics.Operation operation : MapperMetrics.Operation.values()) {
+			dump(out, "operation " + operation.name(), getOperationLatency(operation));
+		}
+		out.println("layer,vertices,max_vertices");
+		for (MapperMetrics.Layer layer : MapperMetrics.Layer.values()) {
+			out.println(layer.name() + "," + getVertices(layer) + "," + getMaxVertices(layer));
+		}
+	}
+
+	private static void dump(PrintStream out, String name, LatencyHistogram histogram){
+		if(histogram.getCount() == 0) return;
+		out.println(name + "," + histogram.getCount() + "," + histogram.getTotalNanos() / 1000 + "," + histogram.getMeanNanos() / 1000 + ","
+				+ histogram.getPercentileNanos(.5) / 1000 + "," + histogram.getPercentileNanos(.9) / 1000 + ","
+				+ histogram.getPercentileNanos(.99) / 1000 + "," + histogram.getMaxNanos() / 1000);
+	}
+}
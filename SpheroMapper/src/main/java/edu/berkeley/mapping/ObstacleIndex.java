@@ -0,0 +1,73 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registry of the objects found on the ground, one entry per contour closed
+ * by the mapper, indexed by an STR-tree.
+ * Queries only test the objects whose envelopes intersect the envelope of the
+ * queried geometry. An STR-tree can't take new items once it's built, so it's
+ * rebuilt on the first query after an object is added, which is rare.
+ */
+class ObstacleIndex {
+	/**
+	 * The prepared geometry of each object.
+	 */
+	private final ArrayList<PreparedGeometry> obstacles = new ArrayList<PreparedGeometry>();
+
+	/**
+	 * The index of the objects, or <code>null</code> if it must be rebuilt.
+	 */
+	private STRtree tree;
+
+	/**
+	 * Adds an object.
+	 * @param obstacle The object's area.
+	 */
+	synchronized void add(Geometry obstacle){
+		if(obstacle == null || obstacle.isEmpty()) return;
+		obstacles.add(PreparedGeometryFactory.prepare(obstacle));
+		tree = null;
+	}
+
+	/**
+	 * @param geometry The geometry to be checked.
+	 * @return <code>true</code> if the geometry intersects any object.
+	 */
+	synchronized boolean intersects(Geometry geometry){
+		for (PreparedGeometry obstacle : query(geometry.getEnvelopeInternal())) {
+			if(obstacle.intersects(geometry)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param envelope The envelope to be searched.
+	 * @return The objects whose envelopes intersect the given envelope.
+	 */
+	@SuppressWarnings("unchecked")
+	synchronized List<PreparedGeometry> query(Envelope envelope){
+		if(obstacles.isEmpty()) return new ArrayList<PreparedGeometry>();
+		if(tree == null){
+			tree = new STRtree();
+			for (PreparedGeometry obstacle : obstacles) {
+				tree.insert(obstacle.getGeometry().getEnvelopeInternal(), obstacle);
+			}
+			tree.build();
+		}
+		return tree.query(envelope);
+	}
+
+	/**
+	 * @return The number of objects.
+	 */
+	synchronized int size(){
+		return obstacles.size();
+	}
+}
@@ -0,0 +1,357 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+import java.util.Arrays;
+
+/**
+ * A fixed resolution square grid of cells, each one holding a state of the
+ * ground. The cells are stored row by row in a single byte array.
+ * Geometries are rasterized with a scanline fill, so marking an area costs
+ * about the number of cells it touches.
+ * <p>
+ * When an area to be marked goes out of the grid, the grid doubles its size
+ * around its center until it covers the area, so nothing is clipped. Growing
+ * beyond the maximum size fails with an {@link IllegalStateException}.
+ */
+public class OccupancyGrid {
+	/**
+	 * State of a cell nothing is known about.
+	 */
+	public static final byte UNKNOWN = 0;
+	/**
+	 * State of a cell outside the perimeter.
+	 */
+	public static final byte OUTSIDE = 1;
+	/**
+	 * State of a cell of free ground.
+	 */
+	public static final byte FREE = 2;
+	/**
+	 * State of a cell occupied by an object.
+	 */
+	public static final byte OBSTACLE = 3;
+
+	/**
+	 * Used as the <code>from</code> argument of the fill operation to tell that
+	 * any state lower than the new one must be replaced.
+	 */
+	private static final byte LOWER = -1;
+
+	/**
+	 * Used as the <code>from</code> argument of the fill operation to tell that
+	 * the cells must only be counted.
+	 */
+	private static final byte NONE = -2;
+
+	/**
+	 * The number of cells in each side of the grid.
+	 */
+	private int size;
+
+	/**
+	 * The number of cells in each side of the grid the grid can grow to.
+	 */
+	private final int maxSize;
+
+	/**
+	 * The length of the side of a cell.
+	 */
+	private final double cellSize;
+
+	/**
+	 * The minimum x of the grid.
+	 */
+	private double minX;
+
+	/**
+	 * The minimum y of the grid.
+	 */
+	private double minY;
+
+	/**
+	 * The state of each cell, row by row.
+	 */
+	private byte[] cells;
+
+	/**
+	 * The number of cells in each state.
+	 */
+	private final int[] counts = new int[4];
+
+	/**
+	 * The state of the cells added when the grid grows.
+	 */
+	private byte growthState = UNKNOWN;
+
+	/**
+	 * Reused buffer for the edge crossings of a scanline.
+	 */
+	private double[] crossings = new double[16];
+
+	/**
+	 *
+	 * @param size The number of cells in each side of the grid.
+	 * @param maxSize The number of cells in each side of the grid the grid can
+	 * grow to.
+	 * @param cellSize The length of the side of a cell.
+	 * @param centerX The x of the center of the grid.
+	 * @param centerY The y of the center of the grid.
+	 */
+	public OccupancyGrid(int size, int maxSize, double cellSize, double centerX, double centerY) {
+		this.size = size;
+		this.maxSize = Math.max(size, maxSize);
+		this.cellSize = cellSize;
+		this.minX = centerX - size * cellSize / 2;
+		this.minY = centerY - size * cellSize / 2;
+		this.cells = new byte[size * size];
+		counts[UNKNOWN] = cells.length;
+	}
+
+	/**
+	 * @return The number of cells in each side of the grid, which grows with
+	 * the areas marked.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public double getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * @return The minimum x of the grid, which moves when the grid grows.
+	 */
+	public double getMinX() {
+		return minX;
+	}
+
+	/**
+	 * @return The minimum y of the grid, which moves when the grid grows.
+	 */
+	public double getMinY() {
+		return minY;
+	}
+
+	/**
+	 * @param x A x coordinate.
+	 * @return The column of the cells containing x, which may be out of the grid.
+	 */
+	public int column(double x){
+		return (int) Math.floor((x - minX) / cellSize);
+	}
+
+	/**
+	 * @param y A y coordinate.
+	 * @return The row of the cells containing y, which may be out of the grid.
+	 */
+	public int row(double y){
+		return (int) Math.floor((y - minY) / cellSize);
+	}
+
+	/**
+	 * @param column The cell's column.
+	 * @return The x of the center of the cells in the column.
+	 */
+	public double centerX(int column){
+		return minX + (column + 0.5) * cellSize;
+	}
+
+	/**
+	 * @param row The cell's row.
+	 * @return The y of the center of the cells in the row.
+	 */
+	public double centerY(int row){
+		return minY + (row + 0.5) * cellSize;
+	}
+
+	/**
+	 * @param column The cell's column.
+	 * @param row The cell's row.
+	 * @return The cell's state, or <code>OUTSIDE</code> if the cell is out of the grid.
+	 */
+	public byte get(int column, int row){
+		if(column < 0 || row < 0 || column >= size || row >= size) return OUTSIDE;
+		return cells[row * size + column];
+	}
+
+	/**
+	 * @param x The x coordinate.
+	 * @param y The y coordinate.
+	 * @return The state of the cell containing (x, y).
+	 */
+	public byte get(double x, double y){
+		return get(column(x), row(y));
+	}
+
+	/**
+	 * <code>UNKNOWN</code> by default.
+	 * @param growthState The state of the cells added when the grid grows.
+	 */
+	public void setGrowthState(byte growthState) {
+		this.growthState = growthState;
+	}
+
+	/**
+	 * @param state A cell state.
+	 * @return The number of cells in the state.
+	 */
+	public int count(byte state){
+		return counts[state];
+	}
+
+	/**
+	 * Sets the state of the cells whose centers are in the area, unless they
+	 * already have a higher state.
+	 * @param area The area to be marked.
+	 * @param state The new state.
+	 * @return The number of cells changed.
+	 * @throws IllegalStateException If the grid can't grow to cover the area.
+	 */
+	public int raise(Geometry area, byte state){
+		return fill(area, LOWER, state);
+	}
+
+	/**
+	 * Changes the cells whose centers are in the area from a state to another.
+	 * @param area The area to be marked.
+	 * @param from The state of the cells to be changed.
+	 * @param to The new state.
+	 * @return The number of cells changed.
+	 * @throws IllegalStateException If the grid can't grow to cover the area.
+	 */
+	public int replace(Geometry area, byte from, byte to){
+		return fill(area, from, to);
+	}
+
+	/**
+	 * @param area An area.
+	 * @return The number of cells of the grid whose centers are in the area.
+	 */
+	public int count(Geometry area){
+		return fill(area, NONE, NONE);
+	}
+
+	/**
+	 * Changes all the cells of the grid from a state to another.
+	 * @param from The state of the cells to be changed.
+	 * @param to The new state.
+	 * @return The number of cells changed.
+	 */
+	public int replaceAll(byte from, byte to){
+		int changed = 0;
+		for (int i = 0; i < cells.length; i++) {
+			if(cells[i] == from){
+				cells[i] = to;
+				changed++;
+			}
+		}
+		counts[from] -= changed;
+		counts[to] += changed;
+		return changed;
+	}
+
+	private int fill(Geometry area, byte from, byte to){
+		if(from != NONE) cover(area.getEnvelopeInternal());
+		int changed = 0;
+		for (int i = 0; i < area.getNumGeometries(); i++) {
+			Geometry g = area.getGeometryN(i);
+			if(g instanceof Polygon) changed += fill((Polygon) g, from, to);
+		}
+		return changed;
+	}
+
+	private int fill(Polygon polygon, byte from, byte to){
+		Envelope envelope = polygon.getEnvelopeInternal();
+		int firstRow = Math.max(0, (int) Math.ceil((envelope.getMinY() - minY) / cellSize - 0.5));
+		int lastRow = Math.min(size - 1, (int) Math.floor((envelope.getMaxY() - minY) / cellSize - 0.5));
+		int changed = 0;
+		for (int row = firstRow; row <= lastRow; row++) {
+			double y = centerY(row);
+			int n = addCrossings(polygon.getExteriorRing().getCoordinateSequence(), y, 0);
+			for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+				n = addCrossings(polygon.getInteriorRingN(i).getCoordinateSequence(), y, n);
+			}
+			Arrays.sort(crossings, 0, n);
+			for (int k = 0; k + 1 < n; k += 2) {
+				int firstColumn = Math.max(0, (int) Math.ceil((crossings[k] - minX) / cellSize - 0.5));
+				int lastColumn = Math.min(size - 1, (int) Math.floor((crossings[k + 1] - minX) / cellSize - 0.5));
+				int offset = row * size;
+				if(from == NONE){
+					changed += Math.max(0, lastColumn - firstColumn + 1);
+					continue;
+				}
+				for (int column = firstColumn; column <= lastColumn; column++) {
+					byte current = cells[offset + column];
+					if(from == LOWER ? current < to : current == from){
+						cells[offset + column] = to;
+						counts[current]--;
+						counts[to]++;
+						changed++;
+					}
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Grows the grid, doubling its size around its center, until it covers
+	 * the envelope. The new cells are in the growth state.
+	 * @param envelope The envelope to be covered.
+	 * @throws IllegalStateException If the grid would grow beyond its maximum
+	 * size.
+	 */
+	private void cover(Envelope envelope){
+		if(envelope.isNull()) return;
+		int newSize = size;
+		int shift = 0;
+		while(envelope.getMinX() < minX - shift * cellSize
+				|| envelope.getMinY() < minY - shift * cellSize
+				|| envelope.getMaxX() > minX + (newSize - shift) * cellSize
+				|| envelope.getMaxY() > minY + (newSize - shift) * cellSize){
+			if(newSize > maxSize / 2){
+				throw new IllegalStateException("The area " + envelope + " is out of the largest occupancy grid, of " + maxSize + " cells by side.");
+			}
+			shift += newSize / 2;
+			newSize *= 2;
+		}
+		if(newSize == size) return;
+		byte[] newCells = new byte[newSize * newSize];
+		if(growthState != UNKNOWN) Arrays.fill(newCells, growthState);
+		for (int row = 0; row < size; row++) {
+			System.arraycopy(cells, row * size, newCells, (row + shift) * newSize + shift, size);
+		}
+		counts[growthState] += newCells.length - cells.length;
+		cells = newCells;
+		size = newSize;
+		minX -= shift * cellSize;
+		minY -= shift * cellSize;
+	}
+
+	/**
+	 * Adds the x of the points where the ring crosses the horizontal line at y.
+	 * @return The new number of crossings.
+	 */
+	private int addCrossings(CoordinateSequence ring, double y, int n){
+		int l = ring.size();
+		for (int i = 0; i + 1 < l; i++) {
+			double y0 = ring.getY(i);
+			double y1 = ring.getY(i + 1);
+			if((y0 <= y) != (y1 <= y)){
+				double x0 = ring.getX(i);
+				double x1 = ring.getX(i + 1);
+				if(n == crossings.length) crossings = Arrays.copyOf(crossings, n * 2);
+				crossings[n++] = x0 + (y - y0) * (x1 - x0) / (y1 - y0);
+			}
+		}
+		return n;
+	}
+}
@@ -0,0 +1,133 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Scores the headings by overlaying their swaths on the unknown ground.
+ * The unknown ground around the robot is computed once, and the candidates
+ * are split in one group per worker and scored in the worker threads.
+ */
+class OverlayHeadingScorer implements HeadingScorer {
+	/**
+	 * Below this number of candidates they're scored in the calling thread.
+	 */
+	private static final int PARALLEL_THRESHOLD = 8;
+
+	private final GeometryFactory geometryFactory;
+
+	/**
+	 * The map the unknown ground is taken from.
+	 */
+	private final MapStore mapStore;
+
+	private final Parameters parameters;
+
+	private final SwathGenerator swathGenerator;
+
+	/**
+	 * The workers the candidates are scored in.
+	 */
+	private final WorkerPool workerPool;
+
+	/**
+	 *
+	 * @param geometryFactory The geometry factory of the map.
+	 * @param mapStore The map the unknown ground is taken from.
+	 * @param parameters The parameters of the mapping algorithm.
+	 * @param workerPool The workers the candidates are scored in.
+	 */
+	OverlayHeadingScorer(GeometryFactory geometryFactory, MapStore mapStore, Parameters parameters, WorkerPool workerPool) {
+		this.geometryFactory = geometryFactory;
+		this.mapStore = mapStore;
+		this.parameters = parameters;
+		this.swathGenerator = new SwathGenerator(geometryFactory, parameters.getRunnerWidth());
+		this.workerPool = workerPool;
+	}
+
+	@Override
+	public void score(final Coordinate origin, final float firstHeading, final float resolution, final double[] scores){
+		Arrays.fill(scores, 0);
+		final double reach = REACH * parameters.getCommanderDriveDistance();
+		Envelope window = new Envelope(origin);
+		window.expandBy(reach + parameters.getRunnerWidth());
+		final Geometry unknown = unknownGeometry(window);
+		if(unknown.isEmpty()) return;
+		//Computed before the workers read it concurrently.
+		unknown.getEnvelopeInternal();
+		int candidates = scores.length;
+		if(!workerPool.isParallel() || candidates < PARALLEL_THRESHOLD){
+			score(origin, reach, firstHeading, resolution, unknown, scores, 0, candidates);
+			return;
+		}
+		int groupSize = (candidates + workerPool.getThreads() - 1) / workerPool.getThreads();
+		ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int start = 0; start < candidates; start += groupSize) {
+			final int first = start;
+			final int end = Math.min(candidates, start + groupSize);
+			futures.add(workerPool.get().submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					score(origin, reach, firstHeading, resolution, unknown, scores, first, end);
+					return null;
+				}
+			}));
+		}
+		try {
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			score(origin, reach, firstHeading, resolution, unknown, scores, 0, candidates);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Scores a group of candidates.
+	 * @param origin The position of the robot.
+	 * @param reach The length of the swaths.
+	 * @param firstHeading The heading of the first candidate.
+	 * @param resolution The angle between the candidates.
+	 * @param unknown The unknown ground around the robot.
+	 * @param scores Where the scores are written, by candidate.
+	 * @param first The first candidate of the group.
+	 * @param end The candidate after the last one of the group.
+	 */
+	private void score(Coordinate origin, double reach, float firstHeading, float resolution, Geometry unknown, double[] scores, int first, int end){
+		Envelope unknownEnvelope = unknown.getEnvelopeInternal();
+		for (int i = first; i < end; i++) {
+			double angle = Math.toRadians(firstHeading + i * resolution);
+			Polygon swath = swathGenerator.generate(origin.x, origin.y, origin.x + Math.cos(angle) * reach, origin.y + Math.sin(angle) * reach);
+			if(!swath.getEnvelopeInternal().intersects(unknownEnvelope)) continue;
+			scores[i] = RobustOverlay.intersection(swath, unknown).getArea();
+		}
+	}
+
+	/**
+	 * Before the perimeter is known, all the ground that's neither free nor
+	 * an object is unknown.
+	 * @param window The area around the robot.
+	 * @return The unknown ground around the robot.
+	 */
+	private Geometry unknownGeometry(Envelope window){
+		if(!mapStore.getPerimeterGeometry().isEmpty()) return mapStore.getUnknownGeometry(window);
+		Geometry unknown = geometryFactory.toGeometry(window);
+		Geometry free = mapStore.getFreeGeometry();
+		if(!free.isEmpty()) unknown = RobustOverlay.difference(unknown, free);
+		Geometry objects = mapStore.getObjectsGeometry();
+		if(!objects.isEmpty()) unknown = RobustOverlay.difference(unknown, objects);
+		return unknown;
+	}
+}
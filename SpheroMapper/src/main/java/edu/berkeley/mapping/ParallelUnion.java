@@ -0,0 +1,60 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.operation.union.UnaryUnionOp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Cascaded union of many geometries split across the processors.
+ * The geometries are divided in one group per worker, each group is merged
+ * in a worker thread and the results are merged in the calling thread.
+ */
+class ParallelUnion {
+	/**
+	 * Below this number of geometries the union is done in the calling thread.
+	 */
+	private static final int PARALLEL_THRESHOLD = 16;
+
+	private ParallelUnion() {}
+
+	/**
+	 * @param geometries The geometries to be merged.
+	 * @param geometryFactory The geometry factory for the result.
+	 * @param workerPool The workers the groups are merged in.
+	 * @return The union of the geometries.
+	 */
+	static Geometry union(List<Geometry> geometries, GeometryFactory geometryFactory, WorkerPool workerPool){
+		if(geometries.isEmpty()) return geometryFactory.createMultiPolygon(null);
+		if(!workerPool.isParallel() || geometries.size() < PARALLEL_THRESHOLD) return UnaryUnionOp.union(geometries, geometryFactory);
+		int groupSize = (geometries.size() + workerPool.getThreads() - 1) / workerPool.getThreads();
+		ArrayList<Future<Geometry>> futures = new ArrayList<Future<Geometry>>();
+		for (int i = 0; i < geometries.size(); i += groupSize) {
+			final List<Geometry> group = geometries.subList(i, Math.min(geometries.size(), i + groupSize));
+			final GeometryFactory factory = geometryFactory;
+			futures.add(workerPool.get().submit(new Callable<Geometry>() {
+				@Override
+				public Geometry call() {
+					return UnaryUnionOp.union(group, factory);
+				}
+			}));
+		}
+		ArrayList<Geometry> partials = new ArrayList<Geometry>();
+		try {
+			for (Future<Geometry> future : futures) {
+				partials.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return UnaryUnionOp.union(geometries, geometryFactory);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		return UnaryUnionOp.union(partials, geometryFactory);
+	}
+}
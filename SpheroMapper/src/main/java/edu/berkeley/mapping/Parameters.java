@@ -1,10 +1,108 @@
 package edu.berkeley.mapping;
 
+import java.util.Random;
+
 /**
  * Class that defines parameters for the mapping algorithm.
  * @author Group
  */
 public class Parameters {
+	/**
+	 * Enumeration of the available map stores.
+	 * @see MapStore
+	 */
+	public static enum MapStoreType{
+		/**
+		 * Keeps the map as JTS geometries.
+		 * @see VectorMapStore
+		 */
+		VECTOR,
+		/**
+		 * Keeps the map in an occupancy grid.
+		 * @see GridMapStore
+		 */
+		GRID
+	}
+	
+	/**
+	 * Enumeration of what the event pipeline does with an event reported when
+	 * its queue is full.
+	 * @see EventPipeline
+	 */
+	public static enum QueueFullPolicy{
+		/**
+		 * Discards the oldest queued event to make room for the new one. Every
+		 * event is a transition of the mapper, so a discarded one leaves the
+		 * mapper out of step with the robot. It's the default, so the thread
+		 * reading the sensors is never held up by the mapper.
+		 */
+		DROP_OLDEST,
+		/**
+		 * Discards the new event, with the same risk as {@link #DROP_OLDEST}.
+		 */
+		DROP_NEWEST,
+		/**
+		 * Waits for room in the queue, so no event is lost. The reporting
+		 * thread is blocked while the mapper catches up, so it's meant for
+		 * tests and for replaying recorded events, not for a live robot.
+		 */
+		BLOCK
+	}
+	
+	/**
+	 * Enumeration of the searches for the shortest path in the roadmap.
+	 * @see RoadmapGraph
+	 */
+	public static enum PathSearch{
+		/**
+		 * Dijkstra's algorithm.
+		 */
+		DIJKSTRA,
+		/**
+		 * A* with the euclidean distance to the destination as heuristic. It
+		 * finds the same path as Dijkstra's algorithm expanding fewer nodes.
+		 */
+		A_STAR
+	}
+	
+	/**
+	 * Enumeration of the available path planners.
+	 * @see PathPlanner
+	 */
+	public static enum PathPlannerType{
+		/**
+		 * Plans through random points of the perimeter.
+		 * @see RandomRoadmapPlanner
+		 */
+		RANDOM_ROADMAP,
+		/**
+		 * Plans through the vertices of the objects grown by the radius of
+		 * the robot.
+		 * @see VisibilityGraphPlanner
+		 */
+		VISIBILITY_GRAPH
+	}
+	
+	/**
+	 * Enumeration of the available heading scorers.
+	 * @see HeadingScorer
+	 */
+	public static enum HeadingScorerType{
+		/**
+		 * Overlays the swath of each heading on the unknown ground. It's the
+		 * most accurate, but it builds geometries for every heading.
+		 * @see OverlayHeadingScorer
+		 */
+		OVERLAY,
+		/**
+		 * Casts rays across the swath of each heading in the occupancy grid.
+		 * It's as accurate as the grid, allocates nothing and stops at the
+		 * objects.
+		 * @see RayCastHeadingScorer
+		 */
+		RAY_CAST
+	}
+	
 	/**
 	 * The distance for the algorithm to set for commander drive function.
 	 * @see Commander#drive(float, float) 
@@ -22,6 +120,107 @@ public class Parameters {
 	 */
 	private float squareLenght = 10;
 	
+	/**
+	 * How many free ground swaths the mapper buffers before merging them.
+	 */
+	private int freeSpaceBatchSize = 16;
+	
+	/**
+	 * The length of the side of the tiles the layers of the vector map store are split in.
+	 */
+	private float tileSize = 50;
+	
+	/**
+	 * The size of the precision grid the geometries are snapped to.
+	 */
+	private float snapPrecision = 0.01f;
+	
+	/**
+	 * The distance tolerance used to simplify the layers when they're compacted.
+	 */
+	private float compactionTolerance = 0.05f;
+	
+	/**
+	 * Polygons and holes smaller than this area are removed when the layers are compacted.
+	 */
+	private float sliverArea = 0.01f;
+	
+	/**
+	 * The number of free ground swaths between compactions of the free ground, or zero to never compact it.
+	 */
+	private int compactionInterval = 50;
+	
+	/**
+	 * Only the tiles with more vertices than this are compacted.
+	 */
+	private int tileVertexBudget = 500;
+	
+	/**
+	 * The map store used by the mapper.
+	 */
+	private MapStoreType mapStoreType = MapStoreType.VECTOR;
+	
+	/**
+	 * The number of cells in each side of the occupancy grids when they're created, centered at the origin. Used by the grid map store and the coverage statistics.
+	 */
+	private int gridSize = 1024;
+	
+	/**
+	 * The number of cells in each side of the occupancy grids they can grow to.
+	 */
+	private int maxGridSize = 4096;
+	
+	/**
+	 * The length of the side of a cell of the occupancy grids. Used by the grid map store and the coverage statistics.
+	 */
+	private float gridCellSize = 1;
+	
+	/**
+	 * The number of events the event pipeline holds before applying its queue full policy.
+	 */
+	private int eventQueueCapacity = 64;
+	
+	/**
+	 * What the event pipeline does with an event reported when its queue is full.
+	 */
+	private QueueFullPolicy queueFullPolicy = QueueFullPolicy.DROP_OLDEST;
+	
+	/**
+	 * The search for the shortest path in the roadmap.
+	 */
+	private PathSearch pathSearch = PathSearch.A_STAR;
+	
+	/**
+	 * The path planner used by the mapper.
+	 */
+	private PathPlannerType pathPlannerType = PathPlannerType.VISIBILITY_GRAPH;
+	
+	/**
+	 * The minimum distance between the nodes of the random roadmap.
+	 */
+	private float roadmapNodeSpacing = 10;
+	
+	/**
+	 * The angle between the candidate headings the mapper scores when it picks a new heading, in degrees.
+	 */
+	private float headingResolution = 10;
+	
+	/**
+	 * The seed of the random numbers of the mapper. Every parameters object
+	 * gets a different one, so runs differ unless it's set.
+	 */
+	private long randomSeed = new Random().nextLong();
+	
+	/**
+	 * The heading scorer used by the mapper.
+	 */
+	private HeadingScorerType headingScorerType = HeadingScorerType.OVERLAY;
+	
+	/**
+	 * The number of worker threads of each mapper.
+	 */
+	private int workerThreads = Runtime.getRuntime().availableProcessors();
+	
 	/**
 	 * @return The distance for the algorithm to set for commander drive function.
 	 * @see Commander#drive(float, float) 
@@ -76,6 +275,309 @@ public class Parameters {
 	public void setSquareLenght(float squareLenght) {
 		this.squareLenght = squareLenght;
 	}
-	
-	
+
+	/**
+	 * @return How many free ground swaths the mapper buffers before merging them.
+	 */
+	public int getFreeSpaceBatchSize() {
+		return freeSpaceBatchSize;
+	}
+
+	/**
+	 * Only taken into account by mappers created after it's set.
+	 * @param freeSpaceBatchSize How many free ground swaths the mapper buffers before merging them.
+	 */
+	public void setFreeSpaceBatchSize(int freeSpaceBatchSize) {
+		this.freeSpaceBatchSize = freeSpaceBatchSize;
+	}
+
+	/**
+	 * @return The length of the side of the tiles the layers of the vector map store are split in.
+	 */
+	public float getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Only taken into account by mappers created after it's set.
+	 * @param tileSize The length of the side of the tiles the layers of the vector map store are split in.
+	 */
+	public void setTileSize(float tileSize) {
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * @return The size of the precision grid the geometries are snapped to.
+	 */
+	public float getSnapPrecision() {
+		return snapPrecision;
+	}
+
+	/**
+	 * @param snapPrecision The size of the precision grid the geometries are snapped to.
+	 */
+	public void setSnapPrecision(float snapPrecision) {
+		this.snapPrecision = snapPrecision;
+	}
+
+	/**
+	 * @return The distance tolerance used to simplify the layers when they're compacted.
+	 */
+	public float getCompactionTolerance() {
+		return compactionTolerance;
+	}
+
+	/**
+	 * @param compactionTolerance The distance tolerance used to simplify the layers when they're compacted.
+	 */
+	public void setCompactionTolerance(float compactionTolerance) {
+		this.compactionTolerance = compactionTolerance;
+	}
+
+	/**
+	 * @return Polygons and holes smaller than this area are removed when the layers are compacted.
+	 */
+	public float getSliverArea() {
+		return sliverArea;
+	}
+
+	/**
+	 * @param sliverArea Polygons and holes smaller than this area are removed when the layers are compacted.
+	 */
+	public void setSliverArea(float sliverArea) {
+		this.sliverArea = sliverArea;
+	}
+
+	/**
+	 * @return The number of free ground swaths between compactions of the free ground, or zero to never compact it.
+	 */
+	public int getCompactionInterval() {
+		return compactionInterval;
+	}
+
+	/**
+	 * @param compactionInterval The number of free ground swaths between compactions of the free ground, or zero to never compact it.
+	 */
+	public void setCompactionInterval(int compactionInterval) {
+		this.compactionInterval = compactionInterval;
+	}
+
+	/**
+	 * @return Only the tiles with more vertices than this are compacted.
+	 */
+	public int getTileVertexBudget() {
+		return tileVertexBudget;
+	}
+
+	/**
+	 * Only taken into account by mappers created after it's set.
+	 * @param tileVertexBudget Only the tiles with more vertices than this are compacted.
+	 */
+	public void setTileVertexBudget(int tileVertexBudget) {
+		this.tileVertexBudget = tileVertexBudget;
+	}
+
+	/**
+	 * @return The map store used by the mapper.
+	 */
+	public MapStoreType getMapStoreType() {
+		return mapStoreType;
+	}
+
+	/**
+	 * Only taken into account by mappers created after it's set.
+	 * @param mapStoreType The map store used by the mapper.
+	 */
+	public void setMapStoreType(MapStoreType mapStoreType) {
+		this.mapStoreType = mapStoreType;
+	}
+
+	/**
+	 * The grids are centered at the origin, so with the default cell size
+	 * they start covering from -512 to 512 in x and y. A grid doubles its size
+	 * when a swath, an object or the perimeter goes out of it, up to
+	 * {@link #getMaxGridSize()} cells by side.
+	 * @return The number of cells in each side of the occupancy grids when
+	 * they're created.
+	 */
+	public int getGridSize() {
+		return gridSize;
+	}
+
+	/**
+	 * @param gridSize The number of cells in each side of the occupancy grids when they're created.
+	 */
+	public void setGridSize(int gridSize) {
+		this.gridSize = gridSize;
+	}
+
+	/**
+	 * Each cell takes a byte, so the default of 4096 cells by side is 16 MB
+	 * per grid. Mapping anything out of a grid of this size fails with an
+	 * {@link IllegalStateException}, instead of being silently clipped.
+	 * @return The number of cells in each side of the occupancy grids they can
+	 * grow to.
+	 */
+	public int getMaxGridSize() {
+		return maxGridSize;
+	}
+
+	/**
+	 * @param maxGridSize The number of cells in each side of the occupancy grids they can grow to.
+	 */
+	public void setMaxGridSize(int maxGridSize) {
+		this.maxGridSize = maxGridSize;
+	}
+
+	/**
+	 * @return The length of the side of a cell of the occupancy grids.
+	 */
+	public float getGridCellSize() {
+		return gridCellSize;
+	}
+
+	/**
+	 * @param gridCellSize The length of the side of a cell of the occupancy grids.
+	 */
+	public void setGridCellSize(float gridCellSize) {
+		this.gridCellSize = gridCellSize;
+	}
+
+	/**
+	 * @return The number of events the event pipeline holds before applying its queue full policy.
+	 */
+	public int getEventQueueCapacity() {
+		return eventQueueCapacity;
+	}
+
+	/**
+	 * Only taken into account by pipelines created after it's set.
+	 * @param eventQueueCapacity The number of events the event pipeline holds before applying its queue full policy.
+	 */
+	public void setEventQueueCapacity(int eventQueueCapacity) {
+		this.eventQueueCapacity = eventQueueCapacity;
+	}
+
+	/**
+	 * @return What the event pipeline does with an event reported when its queue is full.
+	 */
+	public QueueFullPolicy getQueueFullPolicy() {
+		return queueFullPolicy;
+	}
+
+	/**
+	 * Only taken into account by pipelines created after it's set.
+	 * @param queueFullPolicy What the event pipeline does with an event reported when its queue is full.
+	 */
+	public void setQueueFullPolicy(QueueFullPolicy queueFullPolicy) {
+		this.queueFullPolicy = queueFullPolicy;
+	}
+
+	/**
+	 * @return The search for the shortest path in the roadmap.
+	 */
+	public PathSearch getPathSearch() {
+		return pathSearch;
+	}
+
+	/**
+	 * @param pathSearch The search for the shortest path in the roadmap.
+	 */
+	public void setPathSearch(PathSearch pathSearch) {
+		this.pathSearch = pathSearch;
+	}
+
+	/**
+	 * @return The path planner used by the mapper.
+	 */
+	public PathPlannerType getPathPlannerType() {
+		return pathPlannerType;
+	}
+
+	/**
+	 * Only taken into account by mappers created after it's set.
+	 * @param pathPlannerType The path planner used by the mapper.
+	 */
+	public void setPathPlannerType(PathPlannerType pathPlannerType) {
+		this.pathPlannerType = pathPlannerType;
+	}
+
+	/**
+	 * @return The minimum distance between the nodes of the random roadmap.
+	 */
+	public float getRoadmapNodeSpacing() {
+		return roadmapNodeSpacing;
+	}
+
+	/**
+	 * Only taken into account by mappers created after it's set.
+	 * @param roadmapNodeSpacing The minimum distance between the nodes of the random roadmap.
+	 */
+	public void setRoadmapNodeSpacing(float roadmapNodeSpacing) {
+		this.roadmapNodeSpacing = roadmapNodeSpacing;
+	}
+
+	/**
+	 * @return The angle between the candidate headings the mapper scores when it picks a new heading, in degrees.
+	 */
+	public float getHeadingResolution() {
+		return headingResolution;
+	}
+
+	/**
+	 * @param headingResolution The angle between the candidate headings the mapper scores when it picks a new heading, in degrees.
+	 */
+	public void setHeadingResolution(float headingResolution) {
+		this.headingResolution = headingResolution;
+	}
+
+	/**
+	 * @return The heading scorer used by the mapper.
+	 */
+	public HeadingScorerType getHeadingScorerType() {
+		return headingScorerType;
+	}
+
+	/**
+	 * Only taken into account by mappers created after it's set.
+	 * @param headingScorerType The heading scorer used by the mapper.
+	 */
+	public void setHeadingScorerType(HeadingScorerType headingScorerType) {
+		this.headingScorerType = headingScorerType;
+	}
+
+	/**
+	 * @return The seed of the random numbers of the mapper. The same seed and
+	 * the same events give the same commands.
+	 */
+	public long getRandomSeed() {
+		return randomSeed;
+	}
+
+	/**
+	 * Only taken into account by mappers created after it's set.
+	 * @param randomSeed The seed of the random numbers of the mapper.
+	 */
+	public void setRandomSeed(long randomSeed) {
+		this.randomSeed = randomSeed;
+	}
+
+	/**
+	 * The union of many tiles and the scoring of the headings are split
+	 * across the workers. With one worker they run in the thread that reports
+	 * the events, so all the CPU time of the mapper is spent in that thread,
+	 * which is what the batch runner measures. One per processor by default.
+	 * @return The number of worker threads of each mapper.
+	 */
+	public int getWorkerThreads() {
+		return workerThreads;
+	}
+
+	/**
+	 * Only taken into account by mappers created after it's set.
+	 * @param workerThreads The number of worker threads of each mapper.
+	 */
+	public void setWorkerThreads(int workerThreads) {
+		this.workerThreads = workerThreads;
+	}
 }
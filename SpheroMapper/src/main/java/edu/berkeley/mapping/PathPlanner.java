@@ -0,0 +1,33 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import java.util.List;
+
+/**
+ * Plans the paths the robot follows around the objects found on the ground.
+ * @see Mapper
+ * @see Parameters#getPathPlannerType()
+ */
+public interface PathPlanner {
+	/**
+	 * Tells the planner about a new object on the ground.
+	 * @param obstacle The object's area.
+	 */
+	public void addObstacle(Geometry obstacle);
+
+	/**
+	 * Plans a path that avoids the objects.
+	 * @param origin The start of the path.
+	 * @param destination The end of the path.
+	 * @return The points of the path, starting at the origin and ending at the
+	 * destination, or <code>null</code> if no path was found.
+	 */
+	public List<Coordinate> plan(Coordinate origin, Coordinate destination);
+
+	/**
+	 * @return The edges of the graph searched by the last plan, or
+	 * <code>null</code> if nothing was planned yet.
+	 */
+	public Geometry getEdgesGeometry();
+}
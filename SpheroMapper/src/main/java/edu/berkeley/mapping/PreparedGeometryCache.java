@@ -0,0 +1,36 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+/**
+ * Keeps the prepared version of a map layer, so repeated spatial predicates
+ * against the layer don't rebuild its topology every time.
+ * The layers are never modified, a change replaces the geometry object, so
+ * the geometry instance works as the version of the cache: the prepared
+ * geometry is only rebuilt when a different instance is asked for.
+ */
+class PreparedGeometryCache {
+	/**
+	 * The geometry the cached prepared geometry was built from.
+	 */
+	private Geometry source;
+
+	/**
+	 * The prepared version of <code>source</code>.
+	 */
+	private PreparedGeometry prepared;
+
+	/**
+	 * @param geometry The current geometry of the layer.
+	 * @return The prepared version of the geometry.
+	 */
+	synchronized PreparedGeometry get(Geometry geometry){
+		if(geometry != source){
+			prepared = PreparedGeometryFactory.prepare(geometry);
+			source = geometry;
+		}
+		return prepared;
+	}
+}
@@ -0,0 +1,279 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
+import com.vividsolutions.jts.shape.random.RandomPointsBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Plans through a probabilistic roadmap of random points of the perimeter,
+ * kept between plans.
+ * Every plan samples a few new points, but only keeps the ones farther than
+ * the node spacing from every node, so the roadmap only grows where it
+ * doesn't cover the perimeter yet. A new node is connected to the nodes
+ * within the connection radius by the segments that don't touch an object.
+ * When an object is added, only the edges whose envelopes overlap it are
+ * checked again, and the nodes inside it are removed.
+ * @see Parameters#getRoadmapNodeSpacing()
+ */
+class RandomRoadmapPlanner implements PathPlanner {
+	/**
+	 * The number of random points sampled for each plan.
+	 */
+	private static final int SAMPLES = 10;
+
+	/**
+	 * The connection radius, in node spacings.
+	 */
+	private static final double CONNECTION_RADIUS = 3;
+
+	private final GeometryFactory geometryFactory;
+
+	/**
+	 * The map the perimeter and the objects are taken from.
+	 */
+	private final MapStore mapStore;
+
+	private final Parameters parameters;
+
+	private final RandomPointsBuilder randomPointsBuilder;
+
+	/**
+	 * The minimum distance between nodes.
+	 */
+	private final double spacing;
+
+	/**
+	 * The maximum length of an edge.
+	 */
+	private final double connectionRadius;
+
+	/**
+	 * The points of the nodes, by index.
+	 */
+	private final ArrayList<Coordinate> nodes = new ArrayList<Coordinate>();
+
+	/**
+	 * The index of the nodes that weren't removed, by point.
+	 */
+	private final Quadtree nodeIndex = new Quadtree();
+
+	/**
+	 * The first node of each edge.
+	 */
+	private int[] edgeSources = new int[64];
+
+	/**
+	 * The second node of each edge.
+	 */
+	private int[] edgeTargets = new int[64];
+
+	/**
+	 * If each edge was removed.
+	 */
+	private boolean[] edgeRemoved = new boolean[64];
+
+	private int edgeCount = 0;
+
+	/**
+	 * The index of the edges that weren't removed, by envelope.
+	 */
+	private final Quadtree edgeIndex = new Quadtree();
+
+	/**
+	 * The edges of the roadmap searched by the last plan.
+	 */
+	private Geometry edgesGeometry;
+
+	/**
+	 *
+	 * @param geometryFactory The geometry factory for the roadmap.
+	 * @param mapStore The map the perimeter and the objects are taken from.
+	 * @param parameters The parameters of the mapping algorithm.
+	 * @param random The generator of the samples.
+	 */
+	RandomRoadmapPlanner(GeometryFactory geometryFactory, MapStore mapStore, Parameters parameters, Random random) {
+		this.geometryFactory = geometryFactory;
+		this.mapStore = mapStore;
+		this.parameters = parameters;
+		this.randomPointsBuilder = new SeededRandomPointsBuilder(geometryFactory, random);
+		this.spacing = parameters.getRoadmapNodeSpacing();
+		this.connectionRadius = CONNECTION_RADIUS * spacing;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void addObstacle(Geometry obstacle) {
+		if(obstacle == null || obstacle.isEmpty()) return;
+		PreparedGeometry prepared = PreparedGeometryFactory.prepare(obstacle);
+		Envelope envelope = obstacle.getEnvelopeInternal();
+		List<Integer> edges = edgeIndex.query(envelope);
+		for (Integer e : edges) {
+			if(edgeRemoved[e]) continue;
+			Envelope edgeEnvelope = edgeEnvelope(e);
+			if(edgeEnvelope.intersects(envelope) && prepared.intersects(edgeLine(e))){
+				edgeRemoved[e] = true;
+				edgeIndex.remove(edgeEnvelope, e);
+			}
+		}
+		List<Integer> inside = nodeIndex.query(envelope);
+		for (Integer node : inside) {
+			Coordinate point = nodes.get(node);
+			if(envelope.contains(point) && prepared.intersects(geometryFactory.createPoint(point))){
+				nodeIndex.remove(new Envelope(point), node);
+			}
+		}
+	}
+
+	@Override
+	public List<Coordinate> plan(Coordinate origin, Coordinate destination) {
+		sample();
+		int n = nodes.size();
+		Coordinate[] allNodes = nodes.toArray(new Coordinate[n + 2]);
+		allNodes[n] = origin;
+		allNodes[n + 1] = destination;
+		ArrayList<Integer> originNeighbors = neighbors(origin);
+		ArrayList<Integer> destinationNeighbors = neighbors(destination);
+		int maxEdges = edgeCount + originNeighbors.size() + destinationNeighbors.size() + 1;
+		int[] sources = new int[maxEdges];
+		int[] targets = new int[maxEdges];
+		int count = 0;
+		ArrayList<LineString> lines = new ArrayList<LineString>();
+		for (int e = 0; e < edgeCount; e++) {
+			if(edgeRemoved[e]) continue;
+			sources[count] = edgeSources[e];
+			targets[count] = edgeTargets[e];
+			count++;
+			lines.add(edgeLine(e));
+		}
+		for (int end = n; end <= n + 1; end++) {
+			for (Integer node : end == n ? originNeighbors : destinationNeighbors) {
+				LineString line = geometryFactory.createLineString(new Coordinate[]{allNodes[end], allNodes[node]});
+				if(mapStore.intersectsObstacle(line)) continue;
+				sources[count] = end;
+				targets[count] = node;
+				count++;
+				lines.add(line);
+			}
+		}
+		LineString direct = geometryFactory.createLineString(new Coordinate[]{origin, destination});
+		if(!mapStore.intersectsObstacle(direct)){
+			sources[count] = n;
+			targets[count] = n + 1;
+			count++;
+		}
+		edgesGeometry = geometryFactory.createMultiLineString(lines.toArray(new LineString[lines.size()]));
+		RoadmapGraph graph = new RoadmapGraph(allNodes, sources, targets, count);
+		int[] nodePath = graph.shortestPath(n, n + 1, parameters.getPathSearch() == Parameters.PathSearch.A_STAR);
+		if(nodePath == null) return null;
+		ArrayList<Coordinate> path = new ArrayList<Coordinate>();
+		for (int node : nodePath) {
+			path.add(allNodes[node]);
+		}
+		return path;
+	}
+
+	@Override
+	public Geometry getEdgesGeometry() {
+		return edgesGeometry;
+	}
+
+	/**
+	 * @return The number of nodes that weren't removed.
+	 */
+	int getNodeCount(){
+		return nodeIndex.size();
+	}
+
+	/**
+	 * @return The number of edges that weren't removed.
+	 */
+	int getEdgeCount(){
+		return edgeIndex.size();
+	}
+
+	/**
+	 * Adds random points of the perimeter that are out of the objects and
+	 * away from the other nodes, and connects them.
+	 */
+	private void sample(){
+		Geometry perimeter = mapStore.getPerimeterGeometry();
+		if(perimeter.isEmpty()) return;
+		randomPointsBuilder.setNumPoints(SAMPLES);
+		randomPointsBuilder.setExtent(perimeter);
+		Geometry samples = randomPointsBuilder.getGeometry();
+		for (int i = 0; i < samples.getNumGeometries(); i++) {
+			Geometry sample = samples.getGeometryN(i);
+			Coordinate point = sample.getCoordinate();
+			if(isCovered(point) || mapStore.intersectsObstacle(sample)) continue;
+			ArrayList<Integer> neighbors = neighbors(point);
+			int node = nodes.size();
+			nodes.add(point);
+			nodeIndex.insert(new Envelope(point), node);
+			for (Integer neighbor : neighbors) {
+				LineString line = geometryFactory.createLineString(new Coordinate[]{point, nodes.get(neighbor)});
+				if(!mapStore.intersectsObstacle(line)) addEdge(node, neighbor);
+			}
+		}
+	}
+
+	/**
+	 * @param point A point.
+	 * @return <code>true</code> if there's a node closer than the spacing.
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean isCovered(Coordinate point){
+		Envelope envelope = new Envelope(point);
+		envelope.expandBy(spacing);
+		List<Integer> candidates = nodeIndex.query(envelope);
+		for (Integer node : candidates) {
+			if(nodes.get(node).distance(point) < spacing) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param point A point.
+	 * @return The nodes within the connection radius of the point.
+	 */
+	@SuppressWarnings("unchecked")
+	private ArrayList<Integer> neighbors(Coordinate point){
+		Envelope envelope = new Envelope(point);
+		envelope.expandBy(connectionRadius);
+		List<Integer> candidates = nodeIndex.query(envelope);
+		ArrayList<Integer> neighbors = new ArrayList<Integer>();
+		for (Integer node : candidates) {
+			if(nodes.get(node).distance(point) <= connectionRadius) neighbors.add(node);
+		}
+		return neighbors;
+	}
+
+	private void addEdge(int a, int b){
+		if(edgeCount == edgeSources.length){
+			edgeSources = Arrays.copyOf(edgeSources, 2 * edgeCount);
+			edgeTargets = Arrays.copyOf(edgeTargets, 2 * edgeCount);
+			edgeRemoved = Arrays.copyOf(edgeRemoved, 2 * edgeCount);
+		}
+		edgeSources[edgeCount] = a;
+		edgeTargets[edgeCount] = b;
+		edgeIndex.insert(edgeEnvelope(edgeCount), edgeCount);
+		edgeCount++;
+	}
+
+	private Envelope edgeEnvelope(int e){
+		return new Envelope(nodes.get(edgeSources[e]), nodes.get(edgeTargets[e]));
+	}
+
+	private LineString edgeLine(int e){
+		return geometryFactory.createLineString(new Coordinate[]{nodes.get(edgeSources[e]), nodes.get(edgeTargets[e])});
+	}
+}
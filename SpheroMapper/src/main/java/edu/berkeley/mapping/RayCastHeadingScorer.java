@@ -0,0 +1,104 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Scores the headings by casting rays in the occupancy grid of the map.
+ * The swath of each candidate is covered by parallel rays, one every cell
+ * across its width. Each ray walks the cells it crosses, adding the length it
+ * runs through unknown cells, until it reaches the end of the swath, an
+ * object or the outside of the perimeter. Unlike the overlay, the ground
+ * behind an object doesn't count. The walk only reads the cells of the grid,
+ * so scoring allocates nothing.
+ * @see MapStore#getGrid()
+ */
+class RayCastHeadingScorer implements HeadingScorer {
+	/**
+	 * The map whose grid is walked.
+	 */
+	private final MapStore mapStore;
+
+	private final Parameters parameters;
+
+	/**
+	 *
+	 * @param mapStore The map whose grid is walked.
+	 * @param parameters The parameters of the mapping algorithm.
+	 */
+	RayCastHeadingScorer(MapStore mapStore, Parameters parameters) {
+		this.mapStore = mapStore;
+		this.parameters = parameters;
+	}
+
+	@Override
+	public void score(Coordinate origin, float firstHeading, float resolution, double[] scores){
+		OccupancyGrid grid = mapStore.getGrid();
+		double reach = REACH * parameters.getCommanderDriveDistance();
+		//The same width as the swaths of the free ground.
+		double width = 2 * parameters.getRunnerWidth();
+		int rays = Math.max(1, (int) Math.ceil(width / grid.getCellSize()));
+		double spacing = width / rays;
+		for (int i = 0; i < scores.length; i++) {
+			double angle = Math.toRadians(firstHeading + i * resolution);
+			double dx = Math.cos(angle);
+			double dy = Math.sin(angle);
+			double score = 0;
+			for (int k = 0; k < rays; k++) {
+				//Offset to the left of the heading.
+				double offset = (k + 0.5) * spacing - width / 2;
+				score += unknownLength(grid, origin.x - dy * offset, origin.y + dx * offset, dx, dy, reach) * spacing;
+			}
+			scores[i] = score;
+		}
+	}
+
+	/**
+	 * Walks the cells crossed by a ray, in order.
+	 * @param grid The grid.
+	 * @param x The x of the start of the ray.
+	 * @param y The y of the start of the ray.
+	 * @param dx The x of the unit direction of the ray.
+	 * @param dy The y of the unit direction of the ray.
+	 * @param reach The length of the ray.
+	 * @return The length of the ray through unknown cells before an object or
+	 * the outside of the perimeter.
+	 */
+	private static double unknownLength(OccupancyGrid grid, double x, double y, double dx, double dy, double reach){
+		double cellSize = grid.getCellSize();
+		int column = grid.column(x);
+		int row = grid.row(y);
+		int stepColumn = dx > 0 ? 1 : -1;
+		int stepRow = dy > 0 ? 1 : -1;
+		//The distances along the ray to the next column and row boundaries,
+		//and between boundaries.
+		double nextColumn = Double.POSITIVE_INFINITY;
+		double deltaColumn = Double.POSITIVE_INFINITY;
+		if(dx != 0){
+			nextColumn = (grid.getMinX() + (column + (dx > 0 ? 1 : 0)) * cellSize - x) / dx;
+			deltaColumn = cellSize / Math.abs(dx);
+		}
+		double nextRow = Double.POSITIVE_INFINITY;
+		double deltaRow = Double.POSITIVE_INFINITY;
+		if(dy != 0){
+			nextRow = (grid.getMinY() + (row + (dy > 0 ? 1 : 0)) * cellSize - y) / dy;
+			deltaRow = cellSize / Math.abs(dy);
+		}
+		double length = 0;
+		double t = 0;
+		while(t < reach){
+			byte state = grid.get(column, row);
+			if(state == OccupancyGrid.OBSTACLE || state == OccupancyGrid.OUTSIDE) break;
+			double exit = Math.min(reach, Math.min(nextColumn, nextRow));
+			if(state == OccupancyGrid.UNKNOWN) length += exit - t;
+			t = exit;
+			if(nextColumn < nextRow){
+				column += stepColumn;
+				nextColumn += deltaColumn;
+			} else {
+				row += stepRow;
+				nextRow += deltaRow;
+			}
+		}
+		return length;
+	}
+}
@@ -0,0 +1,62 @@
+package edu.berkeley.mapping;
+
+import java.util.Random;
+
+/**
+ * Random generator whose state can be read and set, so a restored mapper
+ * goes on with the same numbers the checkpointed one would have taken.
+ * It's the same linear congruential generator as <code>Random</code>, so it
+ * gives the same numbers for the same seed. The pending second number of
+ * <code>nextGaussian()</code> isn't part of the state; the mapper doesn't
+ * use it.
+ * @see MapperCheckpoint
+ */
+class RestorableRandom extends Random {
+	private static final long serialVersionUID = 1L;
+
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+
+	private static final long ADDEND = 0xBL;
+
+	private static final long MASK = (1L << 48) - 1;
+
+	/**
+	 * Set by the constructor of <code>Random</code> through
+	 * {@link #setSeed(long)}, so it mustn't have an initializer.
+	 */
+	private long state;
+
+	/**
+	 *
+	 * @param seed The seed of the generator.
+	 */
+	RestorableRandom(long seed) {
+		super(seed);
+	}
+
+	@Override
+	public synchronized void setSeed(long seed) {
+		super.setSeed(seed);
+		state = (seed ^ MULTIPLIER) & MASK;
+	}
+
+	@Override
+	protected synchronized int next(int bits) {
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int) (state >>> (48 - bits));
+	}
+
+	/**
+	 * @return The state of the generator.
+	 */
+	synchronized long getState(){
+		return state;
+	}
+
+	/**
+	 * @param state A state of the generator, as given by {@link #getState()}.
+	 */
+	synchronized void setState(long state){
+		this.state = state & MASK;
+	}
+}
@@ -0,0 +1,315 @@
+package edu.berkeley.mapping;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Log of the last things that happened, kept in memory and only formatted
+ * when it's dumped.
+ * The messages are declared once, as constants of the classes that log them,
+ * with their category and their text. Logging a message writes its time, the
+ * message and up to three numbers to a slot of a ring of preallocated arrays,
+ * so it doesn't build strings or allocate anything, and the oldest records
+ * are overwritten when the ring is full. Logging a message of a disabled
+ * category is a lookup of the log of the thread and a single check. Any
+ * thread can log and dump; a record being overwritten while it's dumped is
+ * skipped. The only record that can still come out mixed is one whose slot
+ * two threads write at the same time, which takes {@link #CAPACITY} records
+ * logged by others while one is written.
+ * <p>
+ * The records go to the log of the calling thread, which is the shared log
+ * unless another one was set with {@link #setCurrent(RingLog)}. A program
+ * running several mappers at once, like the batch runner, gives each of them
+ * its own log, so their records and their enabled categories don't mix.
+ * <p>
+ * The texts use <code>{0}</code>, <code>{1}</code> and <code>{2}</code> for
+ * the numbers. A message can name the constants of an enumeration, and then
+ * <code>{0}</code> is shown as the name of the constant whose ordinal is the
+ * first number.
+ */
+public final class RingLog {
+	/**
+	 * The categories of the messages, each of which can be enabled or disabled.
+	 */
+	public static enum Category{
+		/**
+		 * The states and the events of the mapper.
+		 */
+		STATE,
+		/**
+		 * The contour of the objects and the perimeter.
+		 */
+		CONTOUR,
+		/**
+		 * The destinations and the paths.
+		 */
+		PATH,
+		/**
+		 * The coverage of the map and the compaction of its layers.
+		 */
+		COVERAGE,
+		/**
+		 * The recovery of failed geometry operations.
+		 */
+		GEOMETRY,
+		/**
+		 * The commands given to the robot.
+		 */
+		COMMANDER,
+		/**
+		 * The updates of the sensors of the robot.
+		 */
+		SENSOR
+	}
+
+	/**
+	 * A message that can be logged.
+	 */
+	public static final class Message {
+		private final Category category;
+		private final String text;
+		private final Enum<?>[] names;
+
+		private Message(Category category, String text, Enum<?>[] names) {
+			this.category = category;
+			this.text = text;
+			this.names = names;
+		}
+
+		/**
+		 * @return The category of the message.
+		 */
+		public Category getCategory() {
+			return category;
+		}
+
+		/**
+		 * @return The text with the numbers of a record.
+		 */
+		String format(double a, double b, double c){
+			StringBuilder builder = new StringBuilder(text.length() + 16);
+			for (int i = 0; i < text.length(); i++) {
+				char ch = text.charAt(i);
+				if(ch == '{' && i + 2 < text.length() && text.charAt(i + 2) == '}'){
+					int index = text.charAt(i + 1) - '0';
+					if(index >= 0 && index <= 2){
+						double value = index == 0 ? a : index == 1 ? b : c;
+						if(index == 0 && names != null && value >= 0 && value < names.length){
+							builder.append(names[(int) value].name());
+						} else if(value == Math.rint(value) && Math.abs(value) < 1e15){
+							builder.append((long) value);
+						} else if((float) value == value){
+							//Most numbers are floats, shown without the digits of the widening.
+							builder.append((float) value);
+						} else {
+							builder.append(value);
+						}
+						i += 2;
+						continue;
+					}
+				}
+				builder.append(ch);
+			}
+			return builder.toString();
+		}
+	}
+
+	/**
+	 * The number of records kept.
+	 */
+	public static final int CAPACITY = 4096;
+
+	/**
+	 * The log of the threads that didn't set their own.
+	 */
+	private static final RingLog SHARED = new RingLog();
+
+	/**
+	 * The log of each thread.
+	 */
+	private static final ThreadLocal<RingLog> CURRENT = new ThreadLocal<RingLog>() {
+		@Override
+		protected RingLog initialValue() {
+			return SHARED;
+		}
+	};
+
+	/**
+	 * The enabled categories, one bit each.
+	 */
+	private volatile int enabled = (1 << Category.values().length) - 1;
+
+	/**
+	 * The number of records logged so far, which gives the slot of the next one.
+	 */
+	private final AtomicLong next = new AtomicLong();
+
+	/**
+	 * The number of the record in each slot, or -1 while it's being written.
+	 */
+	private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+
+	/*
+	 * The fields of the records are atomic, like the sequences, so their reads
+	 * can't be reordered past the second check of the sequence in dump().
+	 */
+
+	private final AtomicLongArray times = new AtomicLongArray(CAPACITY);
+
+	private final AtomicReferenceArray<Message> messages = new AtomicReferenceArray<Message>(CAPACITY);
+
+	/**
+	 * The raw bits of the numbers of the records.
+	 */
+	private final AtomicLongArray values = new AtomicLongArray(3 * CAPACITY);
+
+	/**
+	 * Creates an empty log, with all the categories enabled.
+	 */
+	public RingLog() {
+		for (int i = 0; i < CAPACITY; i++) {
+			sequences.set(i, -1);
+		}
+	}
+
+	/**
+	 * @return The log the calling thread writes to.
+	 */
+	public static RingLog getCurrent(){
+		return CURRENT.get();
+	}
+
+	/**
+	 * Sets the log the calling thread writes to and dumps.
+	 * @param log The log, or <code>null</code> for the shared one.
+	 */
+	public static void setCurrent(RingLog log){
+		if(log == null){
+			CURRENT.remove();
+		} else {
+			CURRENT.set(log);
+		}
+	}
+
+	/**
+	 * @param category The category of the message.
+	 * @param text The text of the message.
+	 * @return A new message.
+	 */
+	public static Message message(Category category, String text){
+		return new Message(category, text, null);
+	}
+
+	/**
+	 * @param category The category of the message.
+	 * @param text The text of the message.
+	 * @param names The enumeration that names the first number.
+	 * @return A new message.
+	 */
+	public static Message message(Category category, String text, Class<? extends Enum<?>> names){
+		return new Message(category, text, names.getEnumConstants());
+	}
+
+	/**
+	 * @param category A category.
+	 * @return <code>true</code> if the messages of the category are logged.
+	 */
+	public static boolean isEnabled(Category category){
+		return (CURRENT.get().enabled & (1 << category.ordinal())) != 0;
+	}
+
+	/**
+	 * All the categories are enabled by default. Only changes the log of the
+	 * calling thread.
+	 * @param category A category.
+	 * @param enable If the messages of the category are logged.
+	 */
+	public static void setEnabled(Category category, boolean enable){
+		RingLog log = CURRENT.get();
+		synchronized(log){
+			if(enable){
+				log.enabled |= 1 << category.ordinal();
+			} else {
+				log.enabled &= ~(1 << category.ordinal());
+			}
+		}
+	}
+
+	public static void log(Message message){
+		log(message, 0, 0, 0);
+	}
+
+	public static void log(Message message, double a){
+		log(message, a, 0, 0);
+	}
+
+	public static void log(Message message, double a, double b){
+		log(message, a, b, 0);
+	}
+
+	/**
+	 * Logs a message in the log of the calling thread, if its category is
+	 * enabled.
+	 * @param message The message.
+	 * @param a The first number.
+	 * @param b The second number.
+	 * @param c The third number.
+	 */
+	public static void log(Message message, double a, double b, double c){
+		CURRENT.get().append(message, a, b, c);
+	}
+
+	private void append(Message message, double a, double b, double c){
+		if((enabled & (1 << message.category.ordinal())) == 0) return;
+		long sequence = next.getAndIncrement();
+		int slot = (int) (sequence % CAPACITY);
+		sequences.set(slot, -1);
+		//Ordered writes are enough: a reader that sees any of them sees the -1 too.
+		times.lazySet(slot, System.currentTimeMillis());
+		messages.lazySet(slot, message);
+		values.lazySet(3 * slot, Double.doubleToRawLongBits(a));
+		values.lazySet(3 * slot + 1, Double.doubleToRawLongBits(b));
+		values.lazySet(3 * slot + 2, Double.doubleToRawLongBits(c));
+		sequences.set(slot, sequence);
+	}
+
+	/**
+	 * Prints the records kept in the log of the calling thread, from the
+	 * oldest to the newest, one per line with the time in milliseconds, the
+	 * category and the text.
+	 * @param out Where the records are printed.
+	 */
+	public static void dump(PrintStream out){
+		CURRENT.get().print(out);
+	}
+
+	private void print(PrintStream out){
+		long last = next.get();
+		for (long sequence = Math.max(0, last - CAPACITY); sequence < last; sequence++) {
+			int slot = (int) (sequence % CAPACITY);
+			if(sequences.get(slot) != sequence) continue;
+			long time = times.get(slot);
+			Message message = messages.get(slot);
+			double a = Double.longBitsToDouble(values.get(3 * slot));
+			double b = Double.longBitsToDouble(values.get(3 * slot + 1));
+			double c = Double.longBitsToDouble(values.get(3 * slot + 2));
+			if(sequences.get(slot) != sequence) continue;
+			out.println(time + " " + message.category.name() + " " + message.format(a, b, c));
+		}
+	}
+
+	/**
+	 * Forgets the records kept in the log of the calling thread.
+	 */
+	public static void clear(){
+		CURRENT.get().forget();
+	}
+
+	private void forget(){
+		for (int i = 0; i < CAPACITY; i++) {
+			sequences.set(i, -1);
+		}
+	}
+}
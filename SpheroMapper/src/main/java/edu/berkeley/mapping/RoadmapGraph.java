@@ -0,0 +1,170 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import java.util.Arrays;
+
+/**
+ * A weighted undirected graph of points, kept in primitive arrays for the
+ * path search.
+ * The nodes are addressed by their index. The adjacency is stored in
+ * compressed sparse rows: the neighbors of node <code>n</code> are
+ * <code>targets[offsets[n]]</code> to <code>targets[offsets[n + 1] - 1]</code>,
+ * and the weights, the euclidean lengths of the edges, are in the same
+ * positions of <code>weights</code>. The search uses a binary heap, so it
+ * runs in O(E log V).
+ * @see Parameters#getPathSearch()
+ */
+class RoadmapGraph {
+	private final double[] xs;
+	private final double[] ys;
+	private final int[] offsets;
+	private final int[] targets;
+	private final double[] weights;
+
+	/**
+	 *
+	 * @param nodes The points of the nodes, by index.
+	 * @param edgeSources The first node of each edge.
+	 * @param edgeTargets The second node of each edge.
+	 * @param edgeCount The number of edges in the arrays.
+	 */
+	RoadmapGraph(Coordinate[] nodes, int[] edgeSources, int[] edgeTargets, int edgeCount) {
+		int n = nodes.length;
+		xs = new double[n];
+		ys = new double[n];
+		for (int i = 0; i < n; i++) {
+			xs[i] = nodes[i].x;
+			ys[i] = nodes[i].y;
+		}
+		offsets = new int[n + 1];
+		for (int e = 0; e < edgeCount; e++) {
+			offsets[edgeSources[e] + 1]++;
+			offsets[edgeTargets[e] + 1]++;
+		}
+		for (int i = 0; i < n; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		targets = new int[2 * edgeCount];
+		weights = new double[2 * edgeCount];
+		int[] next = Arrays.copyOf(offsets, n);
+		for (int e = 0; e < edgeCount; e++) {
+			int a = edgeSources[e];
+			int b = edgeTargets[e];
+			double weight = distance(a, b);
+			targets[next[a]] = b;
+			weights[next[a]++] = weight;
+			targets[next[b]] = a;
+			weights[next[b]++] = weight;
+		}
+	}
+
+	/**
+	 * @return The number of nodes.
+	 */
+	int size(){
+		return xs.length;
+	}
+
+	/**
+	 * Finds the shortest path between two nodes.
+	 * @param source The start node.
+	 * @param target The end node.
+	 * @param aStar If the search is guided by the euclidean distance to the
+	 * end node. The path found is the same, but fewer nodes are expanded.
+	 * @return The nodes of the path, from the start to the end, or
+	 * <code>null</code> if the end can't be reached.
+	 */
+	int[] shortestPath(int source, int target, boolean aStar){
+		int n = xs.length;
+		double[] dist = new double[n];
+		int[] previous = new int[n];
+		boolean[] closed = new boolean[n];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		Arrays.fill(previous, -1);
+		//Nodes can be pushed once per incoming edge, the stale entries are skipped.
+		Heap open = new Heap(targets.length + 1);
+		dist[source] = 0;
+		open.push(source, aStar ? distance(source, target) : 0);
+		while(!open.isEmpty()){
+			int u = open.pop();
+			if(closed[u]) continue;
+			if(u == target) break;
+			closed[u] = true;
+			for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+				int v = targets[i];
+				if(closed[v]) continue;
+				double alt = dist[u] + weights[i];
+				if(alt < dist[v]){
+					dist[v] = alt;
+					previous[v] = u;
+					open.push(v, aStar ? alt + distance(v, target) : alt);
+				}
+			}
+		}
+		if(dist[target] == Double.POSITIVE_INFINITY) return null;
+		int length = 1;
+		for (int u = target; u != source; u = previous[u]) length++;
+		int[] path = new int[length];
+		for (int u = target, i = length - 1; i >= 0; u = previous[u], i--) {
+			path[i] = u;
+		}
+		return path;
+	}
+
+	private double distance(int a, int b){
+		double dx = xs[a] - xs[b];
+		double dy = ys[a] - ys[b];
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * A binary min heap of nodes keyed by their priority.
+	 */
+	private static class Heap {
+		private final int[] nodes;
+		private final double[] keys;
+		private int size = 0;
+
+		Heap(int capacity) {
+			nodes = new int[capacity];
+			keys = new double[capacity];
+		}
+
+		boolean isEmpty(){
+			return size == 0;
+		}
+
+		void push(int node, double key){
+			int i = size++;
+			while(i > 0){
+				int parent = (i - 1) >>> 1;
+				if(keys[parent] <= key) break;
+				nodes[i] = nodes[parent];
+				keys[i] = keys[parent];
+				i = parent;
+			}
+			nodes[i] = node;
+			keys[i] = key;
+		}
+
+		int pop(){
+			int top = nodes[0];
+			size--;
+			int node = nodes[size];
+			double key = keys[size];
+			int i = 0;
+			while(true){
+				int child = 2 * i + 1;
+				if(child >= size) break;
+				if(child + 1 < size && keys[child + 1] < keys[child]) child++;
+				if(keys[child] >= key) break;
+				nodes[i] = nodes[child];
+				keys[i] = keys[child];
+				i = child;
+			}
+			nodes[i] = node;
+			keys[i] = key;
+			return top;
+		}
+	}
+}
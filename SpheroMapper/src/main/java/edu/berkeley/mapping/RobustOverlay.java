@@ -0,0 +1,135 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.PrecisionModel;
+import com.vividsolutions.jts.geom.TopologyException;
+import com.vividsolutions.jts.operation.overlay.OverlayOp;
+import com.vividsolutions.jts.operation.overlay.snap.SnapIfNeededOverlayOp;
+import com.vividsolutions.jts.operation.union.UnaryUnionOp;
+import com.vividsolutions.jts.precision.GeometryPrecisionReducer;
+import java.util.Collection;
+
+/**
+ * Overlay operations that don't fail on robustness problems.
+ * The operation is first done as usual. If it fails, the inputs are snap
+ * rounded to the precision model of the mapper's geometry factory and the
+ * operation is tried again. If the rounded inputs still can't be noded, they
+ * are cleaned with a zero buffer. Next the operation is done in floating
+ * precision, since noding in the fixed precision model can fail even for
+ * valid inputs, and its result is rounded back. As a last resort, the inputs
+ * are rounded to a coarser grid. That last step can still fail, and then the
+ * <code>TopologyException</code> is thrown to the caller.
+ * @see Parameters#getSnapPrecision()
+ */
+class RobustOverlay {
+	private static final RingLog.Message SNAP_ROUNDING_MESSAGE = RingLog.message(RingLog.Category.GEOMETRY, "Topology exception, snap rounding the inputs.");
+	private static final RingLog.Message CLEANING_MESSAGE = RingLog.message(RingLog.Category.GEOMETRY, "Topology exception, cleaning the inputs.");
+	private static final RingLog.Message FLOATING_MESSAGE = RingLog.message(RingLog.Category.GEOMETRY, "Topology exception, overlaying in floating precision.");
+	private static final RingLog.Message CASCADED_MESSAGE = RingLog.message(RingLog.Category.GEOMETRY, "Topology exception, merging {0} geometries one by one.");
+	private static final RingLog.Message COARSE_MESSAGE = RingLog.message(RingLog.Category.GEOMETRY, "Topology exception, rounding the inputs to a coarser grid.");
+
+	/**
+	 * The scale of the last resort grid when the inputs have floating precision.
+	 */
+	private static final double COARSE_SCALE = 1000;
+
+	private RobustOverlay() {}
+
+	/**
+	 * @return The part of a that's not in b.
+	 * @throws TopologyException If even the coarser grid can't be noded.
+	 */
+	static Geometry difference(Geometry a, Geometry b){
+		return overlay(a, b, OverlayOp.DIFFERENCE);
+	}
+
+	/**
+	 * @return The part of a that's also in b.
+	 * @throws TopologyException If even the coarser grid can't be noded.
+	 */
+	static Geometry intersection(Geometry a, Geometry b){
+		return overlay(a, b, OverlayOp.INTERSECTION);
+	}
+
+	/**
+	 * @return The union of a and b.
+	 * @throws TopologyException If even the coarser grid can't be noded.
+	 */
+	static Geometry union(Geometry a, Geometry b){
+		return overlay(a, b, OverlayOp.UNION);
+	}
+
+	/**
+	 * A cascaded union of many geometries. If it fails, the geometries are
+	 * merged one by one with the fallbacks of {@link #union(Geometry, Geometry)}.
+	 * @param geometries The geometries to be merged.
+	 * @param geometryFactory The geometry factory for an empty result.
+	 * @return The union of the geometries.
+	 * @throws TopologyException If even the coarser grid can't be noded.
+	 */
+	static Geometry union(Collection<Geometry> geometries, GeometryFactory geometryFactory){
+		try {
+			return UnaryUnionOp.union(geometries, geometryFactory);
+		} catch (TopologyException e) {
+			RingLog.log(CASCADED_MESSAGE, geometries.size());
+		}
+		Geometry result = geometryFactory.createMultiPolygon(null);
+		for (Geometry g : geometries) {
+			result = union(result, g);
+		}
+		return result;
+	}
+
+	/**
+	 * @param precision The size of the cells of the precision grid.
+	 * @return The fixed precision model of the grid. The scale is taken from
+	 * the decimal value of the float, so 0.01f gives a scale of exactly 100.
+	 */
+	static PrecisionModel precisionModel(float precision){
+		return new PrecisionModel(1d / Double.parseDouble(Float.toString(precision)));
+	}
+
+	/**
+	 * Snap rounds a geometry to the precision model of its factory.
+	 * @param geometry The geometry to be rounded.
+	 * @return The rounded geometry, which is valid if it's polygonal.
+	 */
+	static Geometry reduce(Geometry geometry){
+		PrecisionModel precisionModel = geometry.getFactory().getPrecisionModel();
+		if(precisionModel.isFloating()) return geometry;
+		return GeometryPrecisionReducer.reduce(geometry, precisionModel);
+	}
+
+	private static Geometry overlay(Geometry a, Geometry b, int opCode){
+		try {
+			return SnapIfNeededOverlayOp.overlayOp(a, b, opCode);
+		} catch (TopologyException e) {
+			RingLog.log(SNAP_ROUNDING_MESSAGE);
+		}
+		try {
+			return SnapIfNeededOverlayOp.overlayOp(reduce(a), reduce(b), opCode);
+		} catch (TopologyException e) {
+			RingLog.log(CLEANING_MESSAGE);
+		}
+		try {
+			return SnapIfNeededOverlayOp.overlayOp(reduce(a).buffer(0), reduce(b).buffer(0), opCode);
+		} catch (TopologyException e) {
+			RingLog.log(FLOATING_MESSAGE);
+		}
+		PrecisionModel precisionModel = a.getFactory().getPrecisionModel();
+		if(!precisionModel.isFloating()){
+			try {
+				GeometryFactory floating = new GeometryFactory(new PrecisionModel(), a.getSRID());
+				Geometry result = SnapIfNeededOverlayOp.overlayOp(floating.createGeometry(a), floating.createGeometry(b), opCode);
+				GeometryPrecisionReducer reducer = new GeometryPrecisionReducer(precisionModel);
+				reducer.setChangePrecisionModel(true);
+				return reducer.reduce(result);
+			} catch (TopologyException e) {
+				RingLog.log(COARSE_MESSAGE);
+			}
+		}
+		PrecisionModel coarser = new PrecisionModel(precisionModel.isFloating() ? COARSE_SCALE : precisionModel.getScale() / 10);
+		return SnapIfNeededOverlayOp.overlayOp(GeometryPrecisionReducer.reduce(a, coarser), GeometryPrecisionReducer.reduce(b, coarser), opCode);
+	}
+}
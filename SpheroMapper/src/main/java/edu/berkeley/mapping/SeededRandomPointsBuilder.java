@@ -0,0 +1,34 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.shape.random.RandomPointsBuilder;
+import java.util.Random;
+
+/**
+ * Random points builder that takes its numbers from a given generator
+ * instead of <code>Math.random()</code>, so the points are the same for the
+ * same seed.
+ * @see Parameters#getRandomSeed()
+ */
+class SeededRandomPointsBuilder extends RandomPointsBuilder {
+	private final Random random;
+
+	/**
+	 *
+	 * @param geometryFactory The factory of the points.
+	 * @param random The generator of the points.
+	 */
+	SeededRandomPointsBuilder(GeometryFactory geometryFactory, Random random) {
+		super(geometryFactory);
+		this.random = random;
+	}
+
+	@Override
+	protected Coordinate createRandomCoord(Envelope env) {
+		double x = env.getMinX() + env.getWidth() * random.nextDouble();
+		double y = env.getMinY() + env.getHeight() * random.nextDouble();
+		return createCoord(x, y);
+	}
+}
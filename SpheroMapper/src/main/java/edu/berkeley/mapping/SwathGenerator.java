@@ -0,0 +1,97 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+/**
+ * Builds the swath the robot sweeps when it moves in a straight line.
+ * The swath of a segment is a rotated rectangle, so it's computed directly
+ * from the endpoints instead of buffering the segment, which builds a whole
+ * buffer graph for every event. The result is the same as the buffer of the
+ * segment with flat caps, optionally with a round cap at the end point,
+ * where the robot touched something.
+ */
+public class SwathGenerator {
+	/**
+	 * The number of segments used to approximate a quarter circle, the same
+	 * as the buffer's default.
+	 */
+	private static final int QUADRANT_SEGMENTS = 8;
+
+	private final GeometryFactory geometryFactory;
+
+	/**
+	 * The precision model the coordinates are rounded to.
+	 */
+	private final PrecisionModel precisionModel;
+
+	/**
+	 * The distance from the segment to the sides of the swath.
+	 */
+	private final double halfWidth;
+
+	/**
+	 *
+	 * @param geometryFactory The geometry factory for the swaths.
+	 * @param halfWidth The distance from the segment to the sides of the
+	 * swath, that is, the buffer distance.
+	 */
+	public SwathGenerator(GeometryFactory geometryFactory, double halfWidth) {
+		this.geometryFactory = geometryFactory;
+		this.precisionModel = geometryFactory.getPrecisionModel();
+		this.halfWidth = halfWidth;
+	}
+
+	/**
+	 * @param x0 The x of the start point.
+	 * @param y0 The y of the start point.
+	 * @param x1 The x of the end point.
+	 * @param y1 The y of the end point.
+	 * @return The swath with flat caps, which is empty if the points are the same.
+	 */
+	public Polygon generate(double x0, double y0, double x1, double y1){
+		return generate(x0, y0, x1, y1, false);
+	}
+
+	/**
+	 * @param x0 The x of the start point.
+	 * @param y0 The y of the start point.
+	 * @param x1 The x of the end point.
+	 * @param y1 The y of the end point.
+	 * @param roundEnd If the end of the swath is a half circle instead of flat.
+	 * @return The swath, clockwise like the buffer's. It's empty if the points
+	 * are the same.
+	 */
+	public Polygon generate(double x0, double y0, double x1, double y1, boolean roundEnd){
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+		double length = Math.sqrt(dx * dx + dy * dy);
+		if(length == 0) return geometryFactory.createPolygon(null, null);
+		//The normal to the left of the direction, scaled to the half width.
+		double nx = -dy / length * halfWidth;
+		double ny = dx / length * halfWidth;
+		int capPoints = roundEnd ? 2 * QUADRANT_SEGMENTS - 1 : 0;
+		Coordinate[] shell = new Coordinate[5 + capPoints];
+		int i = 0;
+		shell[i++] = coordinate(x0 - nx, y0 - ny);
+		shell[i++] = coordinate(x0 + nx, y0 + ny);
+		shell[i++] = coordinate(x1 + nx, y1 + ny);
+		if(roundEnd){
+			double start = Math.atan2(ny, nx);
+			double step = Math.PI / (2 * QUADRANT_SEGMENTS);
+			for (int k = 1; k <= capPoints; k++) {
+				double angle = start - k * step;
+				shell[i++] = coordinate(x1 + halfWidth * Math.cos(angle), y1 + halfWidth * Math.sin(angle));
+			}
+		}
+		shell[i++] = coordinate(x1 - nx, y1 - ny);
+		shell[i] = new Coordinate(shell[0]);
+		return geometryFactory.createPolygon(geometryFactory.createLinearRing(shell), null);
+	}
+
+	private Coordinate coordinate(double x, double y){
+		return new Coordinate(precisionModel.makePrecise(x), precisionModel.makePrecise(y));
+	}
+}
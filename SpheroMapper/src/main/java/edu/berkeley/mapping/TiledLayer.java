@@ -0,0 +1,299 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.geom.util.PolygonExtracter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * A map layer split in square tiles of fixed size, each one holding its own
+ * small geometry.
+ * A new piece is clipped to the tiles it touches and merged only with them,
+ * so adding it doesn't depend on the size of the map. The whole layer is
+ * built on demand, with a parallel cascaded union of the tiles.
+ */
+class TiledLayer {
+	/**
+	 * A tile of the layer.
+	 */
+	static class Tile {
+		/**
+		 * The area of the tile.
+		 */
+		final Envelope envelope;
+
+		/**
+		 * The geometry of the tile, clipped to its area.
+		 */
+		final FreeSpaceAccumulator geometry;
+
+		Tile(Envelope envelope, GeometryFactory geometryFactory, int batchSize) {
+			this.envelope = envelope;
+			this.geometry = new FreeSpaceAccumulator(geometryFactory, batchSize);
+		}
+
+		Geometry getGeometry(){
+			return geometry.getGeometry();
+		}
+	}
+
+	private final GeometryFactory geometryFactory;
+
+	/**
+	 * The workers the tiles are merged in.
+	 */
+	private final WorkerPool workerPool;
+
+	/**
+	 * The length of the side of a tile.
+	 */
+	private final double tileSize;
+
+	/**
+	 * How many pieces each tile buffers before merging them.
+	 */
+	private final int batchSize;
+
+	/**
+	 * The tiles that have anything on, by key.
+	 * @see #key(int, int)
+	 */
+	private final HashMap<Long, Tile> tiles = new HashMap<Long, Tile>();
+
+	/**
+	 * The whole layer, or <code>null</code> if it changed after it was built.
+	 */
+	private Geometry geometry;
+
+	/**
+	 * Incremented every time a piece is added.
+	 */
+	private long version = 0;
+
+	/**
+	 * The polygons of every tile, or <code>null</code> if the layer changed
+	 * after they were collected.
+	 */
+	private Geometry pieces;
+
+	/**
+	 *
+	 * @param geometryFactory The geometry factory for the layer.
+	 * @param tileSize The length of the side of a tile.
+	 * @param batchSize How many pieces each tile buffers before merging them.
+	 * @param workerPool The workers the tiles are merged in.
+	 */
+	TiledLayer(GeometryFactory geometryFactory, double tileSize, int batchSize, WorkerPool workerPool) {
+		this.geometryFactory = geometryFactory;
+		this.workerPool = workerPool;
+		this.tileSize = tileSize;
+		this.batchSize = batchSize;
+		this.geometry = geometryFactory.createMultiPolygon(null);
+	}
+
+	/**
+	 * Adds a piece to the tiles it touches.
+	 * @param piece The piece to be added.
+	 */
+	synchronized void add(Geometry piece){
+		if(piece == null || piece.isEmpty()) return;
+		Envelope envelope = piece.getEnvelopeInternal();
+		int firstColumn = index(envelope.getMinX());
+		int lastColumn = index(envelope.getMaxX());
+		int firstRow = index(envelope.getMinY());
+		int lastRow = index(envelope.getMaxY());
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				Tile tile = getTile(column, row, true);
+				if(tile.envelope.contains(envelope)){
+					tile.geometry.add(piece);
+				}else{
+					//Pieces touching the tile only at its edge leave lines and points behind.
+					Geometry clipped = RobustOverlay.intersection(piece, geometryFactory.toGeometry(tile.envelope));
+					tile.geometry.add(geometryFactory.buildGeometry(PolygonExtracter.getPolygons(clipped)));
+				}
+			}
+		}
+		geometry = null;
+		pieces = null;
+		version++;
+	}
+
+	/**
+	 * Compacts the tiles, periodically or when they have too many vertices.
+	 * @param compactor The compactor to be used.
+	 * @param vertexBudget Only the tiles with more vertices than this are
+	 * compacted. Zero compacts every tile.
+	 * @return The number of vertices of the compacted tiles before and after
+	 * the compaction.
+	 */
+	CompactionReport compact(GeometryCompactor compactor, int vertexBudget){
+		int before = 0;
+		int after = 0;
+		for (Tile tile : getTiles()) {
+			if(tile.getGeometry().getNumPoints() <= vertexBudget) continue;
+			CompactionReport report = tile.geometry.compact(compactor);
+			before += report.getVerticesBefore();
+			after += report.getVerticesAfter();
+		}
+		if(before != after){
+			synchronized(this){
+				geometry = null;
+				pieces = null;
+				version++;
+			}
+		}
+		return new CompactionReport(before, after);
+	}
+
+	/**
+	 * Tells if a coordinate is in the layer, asking only the tiles it is on,
+	 * which answer without merging their content.
+	 * @param coordinate The coordinate to be checked.
+	 * @return <code>true</code> if the coordinate is in the layer, border
+	 * included.
+	 */
+	boolean contains(Coordinate coordinate){
+		int column = index(coordinate.x);
+		int row = index(coordinate.y);
+		//On the edge of two tiles, the tile before it may hold the coordinate too.
+		int firstColumn = coordinate.x == column * tileSize ? column - 1 : column;
+		int firstRow = coordinate.y == row * tileSize ? row - 1 : row;
+		Point point = geometryFactory.createPoint(coordinate);
+		for (int r = firstRow; r <= row; r++) {
+			for (int c = firstColumn; c <= column; c++) {
+				Tile tile;
+				synchronized(this){
+					tile = getTile(c, r, false);
+				}
+				if(tile != null && tile.geometry.covers(point)) return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param area The area to be checked.
+	 * @return <code>true</code> if the layer isn't empty and the whole layer is
+	 * within the area.
+	 */
+	boolean isWithin(Geometry area){
+		PreparedGeometry preparedArea = PreparedGeometryFactory.prepare(area);
+		boolean empty = true;
+		for (Tile tile : getTiles()) {
+			Geometry g = tile.getGeometry();
+			if(g.isEmpty()) continue;
+			empty = false;
+			if(!preparedArea.covers(g)) return false;
+		}
+		return !empty;
+	}
+
+	/**
+	 * @param column The tile's column.
+	 * @param row The tile's row.
+	 * @return The geometry of the tile, which is empty if there's nothing on it.
+	 */
+	Geometry getTileGeometry(int column, int row){
+		Tile tile;
+		synchronized(this){
+			tile = getTile(column, row, false);
+		}
+		return tile == null ? geometryFactory.createMultiPolygon(null) : tile.getGeometry();
+	}
+
+	/**
+	 * @return A copy of the tiles that have anything on.
+	 */
+	synchronized Collection<Tile> getTiles(){
+		return new ArrayList<Tile>(tiles.values());
+	}
+
+	/**
+	 * Builds, if needed, and returns the whole layer.
+	 * @return The union of all the tiles.
+	 */
+	Geometry getGeometry(){
+		long builtVersion;
+		synchronized(this){
+			if(geometry != null) return geometry;
+			builtVersion = version;
+		}
+		ArrayList<Geometry> parts = new ArrayList<Geometry>();
+		for (Tile tile : getTiles()) {
+			Geometry g = tile.getGeometry();
+			if(!g.isEmpty()) parts.add(g);
+		}
+		Geometry whole = ParallelUnion.union(parts, geometryFactory, workerPool);
+		synchronized(this){
+			if(version == builtVersion) geometry = whole;
+		}
+		return whole;
+	}
+
+	/**
+	 * @return The number of vertices of every tile, which may count twice
+	 * the vertices on the tile edges.
+	 */
+	synchronized int getNumPoints(){
+		int numPoints = 0;
+		for (Tile tile : tiles.values()) {
+			numPoints += tile.getGeometry().getNumPoints();
+		}
+		return numPoints;
+	}
+
+	/**
+	 * Collects the polygons of every tile without merging them, so only the
+	 * tiles that changed since the last call merge their new content.
+	 * @return A collection of the polygons of every tile.
+	 */
+	Geometry getPieces(){
+		long builtVersion;
+		synchronized(this){
+			if(pieces != null) return pieces;
+			builtVersion = version;
+		}
+		ArrayList<Geometry> polygons = new ArrayList<Geometry>();
+		for (Tile tile : getTiles()) {
+			for (Object polygon : PolygonExtracter.getPolygons(tile.getGeometry())) {
+				polygons.add((Geometry) polygon);
+			}
+		}
+		Geometry collected = geometryFactory.createGeometryCollection(polygons.toArray(new Geometry[polygons.size()]));
+		synchronized(this){
+			if(version == builtVersion) pieces = collected;
+		}
+		return collected;
+	}
+
+	/**
+	 * @param value A x or y coordinate.
+	 * @return The column or row of the tiles containing the coordinate.
+	 */
+	int index(double value){
+		return (int) Math.floor(value / tileSize);
+	}
+
+	private Tile getTile(int column, int row, boolean create){
+		Long key = key(column, row);
+		Tile tile = tiles.get(key);
+		if(tile == null && create){
+			Envelope envelope = new Envelope(column * tileSize, (column + 1) * tileSize, row * tileSize, (row + 1) * tileSize);
+			tile = new Tile(envelope, geometryFactory, batchSize);
+			tiles.put(key, tile);
+		}
+		return tile;
+	}
+
+	private static long key(int column, int row){
+		return ((long) column << 32) | (row & 0xFFFFFFFFL);
+	}
+}
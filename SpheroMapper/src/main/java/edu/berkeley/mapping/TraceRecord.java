@@ -0,0 +1,182 @@
+package edu.berkeley.mapping;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A record of a trace: an event reported to the mapper and the commands the
+ * mapper gave while handling it.
+ * A trace starts with a header: the magic number, the version of the format
+ * as a byte and the random seed of the mapper as a long. The binary layout of
+ * each record after it is:
+ * <ul>
+ *	<li>byte: the ordinal of the event type.</li>
+ *	<li>float x, float y, float angle: the event.</li>
+ *	<li>long: the time the event was reported, in nanoseconds. Only the
+ *	difference between records means something.</li>
+ *	<li>float: the heading the commander gave to the mapper while it handled
+ *	the event, or NaN if it wasn't asked.</li>
+ *	<li>byte: the number of commands, then for each command a byte with the
+ *	ordinal of its call, a short with the number of values and the values as
+ *	floats.</li>
+ * </ul>
+ * @see TraceRecorder
+ * @see TraceReplayer
+ */
+class TraceRecord {
+	/**
+	 * The first bytes of a trace.
+	 */
+	private static final int MAGIC = 0x53545243;
+
+	private static final int VERSION = 1;
+
+	/**
+	 * The calls of the commander.
+	 */
+	static enum Call{
+		/**
+		 * {@link Commander#drive(float, float)}: the heading variation and the distance.
+		 */
+		DRIVE_DISTANCE,
+		/**
+		 * {@link Commander#drive(float)}: the heading variation.
+		 */
+		DRIVE,
+		/**
+		 * {@link Commander#drive(java.util.List)}: x and y of each point.
+		 */
+		DRIVE_POINTS,
+		/**
+		 * {@link Commander#makeLeftSquare(float)}: the collision angle.
+		 */
+		MAKE_LEFT_SQUARE,
+		/**
+		 * {@link Commander#makeRightSquare(float)}: the collision angle.
+		 */
+		MAKE_RIGHT_SQUARE,
+		/**
+		 * {@link Commander#stop()}: no values.
+		 */
+		STOP
+	}
+
+	/**
+	 * A call given to the commander.
+	 */
+	static class Command {
+		final Call call;
+		final float[] values;
+
+		Command(Call call, float... values) {
+			this.call = call;
+			this.values = values;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Command)) return false;
+			Command other = (Command) obj;
+			return call == other.call && Arrays.equals(values, other.values);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * call.hashCode() + Arrays.hashCode(values);
+		}
+
+		@Override
+		public String toString() {
+			return call.name() + Arrays.toString(values);
+		}
+	}
+
+	final MappingEvent event;
+
+	final long nanos;
+
+	float heading = Float.NaN;
+
+	final ArrayList<Command> commands = new ArrayList<Command>(2);
+
+	TraceRecord(MappingEvent event, long nanos) {
+		this.event = event;
+		this.nanos = nanos;
+	}
+
+	/**
+	 * @param out The stream.
+	 * @param randomSeed The random seed of the recorded mapper.
+	 * @throws IOException If the stream can't be written.
+	 */
+	static void writeHeader(DataOutputStream out, long randomSeed) throws IOException{
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeLong(randomSeed);
+	}
+
+	/**
+	 * @param in The stream.
+	 * @return The random seed of the recorded mapper.
+	 * @throws IOException If the stream can't be read, or it isn't a trace of
+	 * this version.
+	 */
+	static long readHeader(DataInputStream in) throws IOException{
+		if(in.readInt() != MAGIC) throw new IOException("Not a trace.");
+		int version = in.readUnsignedByte();
+		if(version != VERSION) throw new IOException("Trace version " + version + " not supported.");
+		return in.readLong();
+	}
+
+	void write(DataOutputStream out) throws IOException{
+		out.writeByte(event.getType().ordinal());
+		out.writeFloat(event.getX());
+		out.writeFloat(event.getY());
+		out.writeFloat(event.getAngle());
+		out.writeLong(nanos);
+		out.writeFloat(heading);
+		out.writeByte(commands.size());
+		for (Command command : commands) {
+			out.writeByte(command.call.ordinal());
+			out.writeShort(command.values.length);
+			for (float value : command.values) {
+				out.writeFloat(value);
+			}
+		}
+	}
+
+	/**
+	 * @param in The stream.
+	 * @return The next record, or <code>null</code> at the end of the stream.
+	 * A record cut at the end, as the last one of a run that was killed, is
+	 * taken as the end.
+	 * @throws IOException If the stream can't be read, or it isn't a trace.
+	 */
+	static TraceRecord read(DataInputStream in) throws IOException{
+		int type = in.read();
+		if(type < 0) return null;
+		try {
+			if(type >= MappingEvent.Type.values().length) throw new IOException("Not an event type: " + type);
+			MappingEvent event = new MappingEvent(MappingEvent.Type.values()[type], in.readFloat(), in.readFloat(), in.readFloat());
+			TraceRecord record = new TraceRecord(event, in.readLong());
+			record.heading = in.readFloat();
+			int commands = in.readUnsignedByte();
+			for (int i = 0; i < commands; i++) {
+				int call = in.readUnsignedByte();
+				if(call >= Call.values().length) throw new IOException("Not a commander call: " + call);
+				float[] values = new float[in.readUnsignedShort()];
+				for (int j = 0; j < values.length; j++) {
+					values[j] = in.readFloat();
+				}
+				record.commands.add(new Command(Call.values()[call], values));
+			}
+			return record;
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+}
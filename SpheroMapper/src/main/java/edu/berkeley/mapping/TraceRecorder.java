@@ -0,0 +1,166 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Records the events reported to a mapper and the commands it gives, so a
+ * run can be replayed without the robot.
+ * The recorder goes between the mapper and the real commander: the mapper is
+ * created with the recorder as its commander, and the recorder is added as a
+ * listener of its events. The trace starts with the random seed of the
+ * mapper, so the replay takes the same random choices. Each event is written
+ * as a record, with the time it was reported and the commands given while
+ * handling it, when the next event is reported or the recorder is closed. The records are flushed one by one,
+ * so a run that is killed loses at most the last one.
+ * <p>
+ * Recording mustn't stop the mapping, so if writing fails the recorder
+ * stops writing and the error is thrown when it's closed.
+ * @see TraceReplayer
+ * @see TraceRecord
+ */
+public class TraceRecorder implements Commander, MappingEventListener, Closeable {
+	/**
+	 * The commander the calls are passed to.
+	 */
+	private final Commander commander;
+
+	private final DataOutputStream out;
+
+	/**
+	 * The record of the event being handled, written when the next one comes.
+	 */
+	private TraceRecord pending;
+
+	/**
+	 * The first error writing, if any.
+	 */
+	private IOException error;
+
+	/**
+	 *
+	 * @param commander The commander the calls are passed to.
+	 * @param out Where the trace is written.
+	 * @param parameters The parameters of the mapper.
+	 */
+	public TraceRecorder(Commander commander, OutputStream out, Parameters parameters) {
+		this.commander = commander;
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+		try {
+			TraceRecord.writeHeader(this.out, parameters.getRandomSeed());
+			this.out.flush();
+		} catch (IOException e) {
+			error = e;
+			System.err.println("Error writing the trace, recording stopped: " + e.getMessage());
+		}
+	}
+
+	/**
+	 *
+	 * @param commander The commander the calls are passed to.
+	 * @param file The file the trace is written to.
+	 * @param parameters The parameters of the mapper.
+	 * @throws IOException If the file can't be opened.
+	 */
+	public TraceRecorder(Commander commander, File file, Parameters parameters) throws IOException {
+		this(commander, new FileOutputStream(file), parameters);
+	}
+
+	@Override
+	public synchronized void onEventReported(MappingEvent event) {
+		writePending();
+		pending = new TraceRecord(event, System.nanoTime());
+	}
+
+	@Override
+	public void drive(float headingVariation, float distance) {
+		record(TraceRecord.Call.DRIVE_DISTANCE, headingVariation, distance);
+		commander.drive(headingVariation, distance);
+	}
+
+	@Override
+	public void drive(float headingVariation) {
+		record(TraceRecord.Call.DRIVE, headingVariation);
+		commander.drive(headingVariation);
+	}
+
+	@Override
+	public void drive(List<Coordinate> points) {
+		float[] values = new float[2 * points.size()];
+		int i = 0;
+		for (Coordinate point : points) {
+			values[i++] = (float) point.x;
+			values[i++] = (float) point.y;
+		}
+		record(TraceRecord.Call.DRIVE_POINTS, values);
+		commander.drive(points);
+	}
+
+	@Override
+	public void makeLeftSquare(float collisionAngle) {
+		record(TraceRecord.Call.MAKE_LEFT_SQUARE, collisionAngle);
+		commander.makeLeftSquare(collisionAngle);
+	}
+
+	@Override
+	public void makeRightSquare(float collisionAngle) {
+		record(TraceRecord.Call.MAKE_RIGHT_SQUARE, collisionAngle);
+		commander.makeRightSquare(collisionAngle);
+	}
+
+	@Override
+	public void stop() {
+		record(TraceRecord.Call.STOP);
+		commander.stop();
+	}
+
+	@Override
+	public float getCurrentHeading() {
+		float heading = commander.getCurrentHeading();
+		synchronized(this){
+			if(pending != null) pending.heading = heading;
+		}
+		return heading;
+	}
+
+	/**
+	 * Writes the last record and closes the stream.
+	 * @throws IOException If writing failed at any time.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		writePending();
+		try {
+			out.close();
+		} catch (IOException e) {
+			if(error == null) error = e;
+		}
+		if(error != null) throw error;
+	}
+
+	private synchronized void record(TraceRecord.Call call, float... values){
+		//Commands given outside the handling of an event, if any, aren't recorded.
+		if(pending != null) pending.commands.add(new TraceRecord.Command(call, values));
+	}
+
+	private void writePending(){
+		if(pending == null) return;
+		TraceRecord record = pending;
+		pending = null;
+		if(error != null) return;
+		try {
+			record.write(out);
+			out.flush();
+		} catch (IOException e) {
+			error = e;
+			System.err.println("Error writing the trace, recording stopped: " + e.getMessage());
+		}
+	}
+}
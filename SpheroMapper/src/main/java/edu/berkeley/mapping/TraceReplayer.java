@@ -0,0 +1,160 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Feeds the events of a trace to a new mapper, in the thread calling
+ * {@link #replay(boolean)}.
+ * The replayer is the commander of the mapper, which is seeded with the seed
+ * of the trace. It gives the mapper the headings of the trace, and compares
+ * the commands the mapper gives for each event with the recorded ones. The
+ * commands differ when the mapper was changed or its parameters are
+ * different, and from then on the events of the trace don't answer the
+ * commands anymore, which only matters for the map, not for the work done.
+ * @see TraceRecorder
+ */
+public class TraceReplayer implements Commander {
+	private final DataInputStream in;
+
+	private final Mapper mapper;
+
+	/**
+	 * The record being replayed.
+	 */
+	private TraceRecord record;
+
+	/**
+	 * The commands the mapper gave for the record being replayed.
+	 */
+	private final ArrayList<TraceRecord.Command> commands = new ArrayList<TraceRecord.Command>(2);
+
+	private int events = 0;
+
+	private int mismatches = 0;
+
+	private long handlingNanos = 0;
+
+	/**
+	 *
+	 * @param in The trace.
+	 * @param parameters The parameters of the new mapper. Its random seed is
+	 * set to the one of the trace.
+	 * @throws IOException If the header of the trace can't be read.
+	 */
+	public TraceReplayer(InputStream in, Parameters parameters) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(in));
+		parameters.setRandomSeed(TraceRecord.readHeader(this.in));
+		this.mapper = new Mapper(this, parameters);
+	}
+
+	/**
+	 * Reports every event of the trace to the mapper.
+	 * @param paced If the events are reported with the same time between them
+	 * as when they were recorded, or as fast as the mapper handles them.
+	 * When the mapper takes longer than the recorded time, the next event
+	 * comes right after it.
+	 * @return The number of events reported.
+	 * @throws IOException If the trace can't be read.
+	 * @throws InterruptedException If the thread is interrupted while waiting
+	 * for the time of an event.
+	 */
+	public int replay(boolean paced) throws IOException, InterruptedException{
+		long firstRecordNanos = 0;
+		long start = System.nanoTime();
+		while((record = TraceRecord.read(in)) != null){
+			if(events == 0) firstRecordNanos = record.nanos;
+			if(paced){
+				long wait = (record.nanos - firstRecordNanos) - (System.nanoTime() - start);
+				if(wait > 0) Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+			}
+			commands.clear();
+			long handlingStart = System.nanoTime();
+			mapper.reportEvent(record.event);
+			handlingNanos += System.nanoTime() - handlingStart;
+			if(!commands.equals(record.commands)) mismatches++;
+			events++;
+		}
+		in.close();
+		return events;
+	}
+
+	/**
+	 * @return The mapper the events are reported to.
+	 */
+	public Mapper getMapper() {
+		return mapper;
+	}
+
+	/**
+	 * @return The number of events reported so far.
+	 */
+	public int getEvents() {
+		return events;
+	}
+
+	/**
+	 * @return The number of events for which the mapper didn't give the
+	 * recorded commands.
+	 */
+	public int getMismatches() {
+		return mismatches;
+	}
+
+	/**
+	 * @return The time spent by the mapper handling the events, in nanoseconds.
+	 */
+	public long getHandlingNanos() {
+		return handlingNanos;
+	}
+
+	@Override
+	public void drive(float headingVariation, float distance) {
+		commands.add(new TraceRecord.Command(TraceRecord.Call.DRIVE_DISTANCE, headingVariation, distance));
+	}
+
+	@Override
+	public void drive(float headingVariation) {
+		commands.add(new TraceRecord.Command(TraceRecord.Call.DRIVE, headingVariation));
+	}
+
+	@Override
+	public void drive(List<Coordinate> points) {
+		float[] values = new float[2 * points.size()];
+		int i = 0;
+		for (Coordinate point : points) {
+			values[i++] = (float) point.x;
+			values[i++] = (float) point.y;
+		}
+		commands.add(new TraceRecord.Command(TraceRecord.Call.DRIVE_POINTS, values));
+	}
+
+	@Override
+	public void makeLeftSquare(float collisionAngle) {
+		commands.add(new TraceRecord.Command(TraceRecord.Call.MAKE_LEFT_SQUARE, collisionAngle));
+	}
+
+	@Override
+	public void makeRightSquare(float collisionAngle) {
+		commands.add(new TraceRecord.Command(TraceRecord.Call.MAKE_RIGHT_SQUARE, collisionAngle));
+	}
+
+	@Override
+	public void stop() {
+		commands.add(new TraceRecord.Command(TraceRecord.Call.STOP));
+	}
+
+	/**
+	 * @return The heading recorded for the event being replayed, or 0 if the
+	 * mapper didn't ask for it when it was recorded.
+	 */
+	@Override
+	public float getCurrentHeading() {
+		return record == null || Float.isNaN(record.heading) ? 0 : record.heading;
+	}
+}
@@ -0,0 +1,252 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import java.util.ArrayList;
+
+/**
+ * Map store that keeps every layer as JTS geometries, split in tiles.
+ * @see MapStore
+ * @see TiledLayer
+ */
+public class VectorMapStore implements MapStore {
+	/**
+	 * The geometry factory for the layers.
+	 */
+	private final GeometryFactory geometryFactory;
+
+	/**
+	 * The workers the tiles are merged in.
+	 */
+	private final WorkerPool workerPool;
+
+	/**
+	 * The free ground.
+	 */
+	private final TiledLayer free;
+
+	/**
+	 * The objects on the ground.
+	 */
+	private final TiledLayer objects;
+
+	/**
+	 * The perimeter.
+	 */
+	private final TiledLayer perimeter;
+
+	/**
+	 * The index of each object found, used by the intersection tests.
+	 */
+	private final ObstacleIndex obstacles = new ObstacleIndex();
+
+	/**
+	 * The layers rasterized, kept up to date as they change.
+	 */
+	private final OccupancyGrid grid;
+
+	/**
+	 * The areas of the layers, counted in the grid.
+	 */
+	private final CoverageStatistics coverageStatistics;
+
+	/**
+	 * The unknown regions, updated only where the layers change.
+	 */
+	private final FrontierTracker frontier;
+
+	/**
+	 * The compactor of the free ground and the objects.
+	 */
+	private final GeometryCompactor compactor;
+
+	/**
+	 * Only the tiles with more vertices than this are compacted.
+	 */
+	private final int tileVertexBudget;
+
+	/**
+	 * Incremented every time a layer changes.
+	 */
+	private long version = 0;
+
+	/**
+	 *
+	 * @param geometryFactory The geometry factory for the layers.
+	 * @param parameters The parameters of the mapping algorithm.
+	 */
+	public VectorMapStore(GeometryFactory geometryFactory, Parameters parameters) {
+		this(geometryFactory, parameters, new WorkerPool(parameters.getWorkerThreads()));
+	}
+
+	/**
+	 *
+	 * @param geometryFactory The geometry factory for the layers.
+	 * @param parameters The parameters of the mapping algorithm.
+	 * @param workerPool The workers of the mapper the store belongs to.
+	 */
+	VectorMapStore(GeometryFactory geometryFactory, Parameters parameters, WorkerPool workerPool) {
+		this.geometryFactory = geometryFactory;
+		this.workerPool = workerPool;
+		this.free = new TiledLayer(geometryFactory, parameters.getTileSize(), parameters.getFreeSpaceBatchSize(), workerPool);
+		this.objects = new TiledLayer(geometryFactory, parameters.getTileSize(), 1, workerPool);
+		this.perimeter = new TiledLayer(geometryFactory, parameters.getTileSize(), 1, workerPool);
+		this.compactor = new GeometryCompactor(geometryFactory, parameters);
+		this.tileVertexBudget = parameters.getTileVertexBudget();
+		this.grid = new OccupancyGrid(parameters.getGridSize(), parameters.getMaxGridSize(), parameters.getGridCellSize(), 0, 0);
+		this.coverageStatistics = new CoverageStatistics(grid);
+		this.frontier = new FrontierTracker(new FrontierTracker.Source() {
+			@Override
+			public Geometry getUnknownGeometry(Envelope area) {
+				Coordinate centre = area.centre();
+				return unknownGeometry(perimeter.index(centre.x), perimeter.index(centre.y));
+			}
+		}, geometryFactory, parameters.getTileSize());
+	}
+
+	@Override
+	public void addFree(Geometry swath) {
+		free.add(swath);
+		version++;
+		coverageStatistics.addFree(swath);
+		frontier.invalidate(swath.getEnvelopeInternal());
+	}
+
+	@Override
+	public void addObstacle(Geometry obstacle) {
+		objects.add(obstacle);
+		obstacles.add(obstacle);
+		version++;
+		coverageStatistics.addObstacle(obstacle);
+		frontier.invalidate(obstacle.getEnvelopeInternal());
+	}
+
+	@Override
+	public void addPerimeter(Geometry perimeter) {
+		this.perimeter.add(perimeter);
+		version++;
+		coverageStatistics.setPerimeter(this.perimeter.getGeometry());
+		frontier.invalidate(perimeter.getEnvelopeInternal());
+	}
+
+	@Override
+	public CompactionReport compact() {
+		CompactionReport report = free.compact(compactor, tileVertexBudget);
+		if(report.getVerticesBefore() != report.getVerticesAfter()){
+			version++;
+			frontier.invalidateAll();
+		}
+		return report;
+	}
+
+	@Override
+	public boolean isFree(Coordinate coordinate) {
+		return free.contains(coordinate);
+	}
+
+	@Override
+	public boolean isFreeWithin(Geometry area) {
+		return free.isWithin(area);
+	}
+
+	@Override
+	public boolean intersectsObstacle(Geometry geometry) {
+		return obstacles.intersects(geometry);
+	}
+
+	@Override
+	public double getUnknownArea() {
+		return coverageStatistics.getUnknownArea();
+	}
+
+	@Override
+	public double getCoverageRatio() {
+		return coverageStatistics.getCoverageRatio();
+	}
+
+	@Override
+	public Geometry getUnknownGeometry() {
+		ArrayList<Geometry> parts = new ArrayList<Geometry>();
+		for (TiledLayer.Tile tile : perimeter.getTiles()) {
+			Geometry unknown = unknownGeometry(perimeter.index(tile.envelope.centre().x), perimeter.index(tile.envelope.centre().y));
+			if(!unknown.isEmpty()) parts.add(unknown);
+		}
+		return ParallelUnion.union(parts, geometryFactory, workerPool);
+	}
+
+	@Override
+	public Geometry getUnknownGeometry(Envelope area) {
+		ArrayList<Geometry> parts = new ArrayList<Geometry>();
+		for (int row = perimeter.index(area.getMinY()); row <= perimeter.index(area.getMaxY()); row++) {
+			for (int column = perimeter.index(area.getMinX()); column <= perimeter.index(area.getMaxX()); column++) {
+				Geometry unknown = unknownGeometry(column, row);
+				if(!unknown.isEmpty()) parts.add(unknown);
+			}
+		}
+		return ParallelUnion.union(parts, geometryFactory, workerPool);
+	}
+
+	@Override
+	public Geometry getNearestUnknownRegion(Coordinate coordinate, double minArea) {
+		return frontier.nearest(coordinate, minArea);
+	}
+
+	@Override
+	public OccupancyGrid getGrid() {
+		return grid;
+	}
+
+	@Override
+	public long getVersion() {
+		return version;
+	}
+
+	@Override
+	public Geometry getFreeGeometry() {
+		return free.getGeometry();
+	}
+
+	@Override
+	public Geometry getFreePieces() {
+		return free.getPieces();
+	}
+
+	@Override
+	public int getVertices(MapperMetrics.Layer layer) {
+		switch(layer){
+			case FREE:
+				return free.getNumPoints();
+			case OBJECTS:
+				return objects.getNumPoints();
+			default:
+				return perimeter.getNumPoints();
+		}
+	}
+
+	@Override
+	public Geometry getObjectsGeometry() {
+		return objects.getGeometry();
+	}
+
+	@Override
+	public Geometry getPerimeterGeometry() {
+		return perimeter.getGeometry();
+	}
+
+	/**
+	 * @param column The tile's column.
+	 * @param row The tile's row.
+	 * @return The part of the perimeter in the tile that's neither free nor an object.
+	 */
+	private Geometry unknownGeometry(int column, int row){
+		Geometry unknown = perimeter.getTileGeometry(column, row);
+		if(unknown.isEmpty()) return unknown;
+		Geometry freeTile = free.getTileGeometry(column, row);
+		if(!freeTile.isEmpty()) unknown = RobustOverlay.difference(unknown, freeTile);
+		Geometry objectsTile = objects.getTileGeometry(column, row);
+		if(!objectsTile.isEmpty()) unknown = RobustOverlay.difference(unknown, objectsTile);
+		return unknown;
+	}
+}
@@ -0,0 +1,274 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.geom.util.PolygonExtracter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Plans through the visibility graph of the objects, grown by the clearance
+ * the robot needs.
+ * The nodes are the vertices of the grown objects and two nodes are
+ * neighbors if the robot can drive straight from one to the other. The
+ * shortest path in this graph is the shortest path around the objects. The
+ * graph is kept between plans and only updated when an object is added: the
+ * edges the new object blocks are removed, with the nodes they leave without
+ * edges, and its vertices are connected to the rest. The origin and the destination are connected for each plan.
+ */
+class VisibilityGraphPlanner implements PathPlanner {
+	/**
+	 * The nodes are put a bit farther than the clearance, so the edges between
+	 * the vertices of an object don't touch the grown object.
+	 */
+	private static final double VERTEX_MARGIN = 1.1;
+
+	/**
+	 * The segments used to approximate a quarter circle around the corners of
+	 * the objects. Few of them keep the graph small.
+	 */
+	private static final int VERTEX_QUADRANT_SEGMENTS = 2;
+
+	private final GeometryFactory geometryFactory;
+
+	private final Parameters parameters;
+
+	/**
+	 * The distance kept from the objects, the same as the buffer distance of
+	 * the swaths: the whole width of the robot.
+	 * @see SwathGenerator
+	 */
+	private final double radius;
+
+	/**
+	 * The objects, as they were found.
+	 */
+	private final ObstacleIndex obstacles = new ObstacleIndex();
+
+	/**
+	 * The objects grown by the clearance, which the edges can't touch.
+	 */
+	private final ObstacleIndex grownObstacles = new ObstacleIndex();
+
+	/**
+	 * The points of the nodes, by index.
+	 */
+	private final ArrayList<Coordinate> nodes = new ArrayList<Coordinate>();
+
+	/**
+	 * The first node of each edge.
+	 */
+	private int[] edgeSources = new int[64];
+
+	/**
+	 * The second node of each edge.
+	 */
+	private int[] edgeTargets = new int[64];
+
+	private int edgeCount = 0;
+
+	/**
+	 * The edges searched by the last plan.
+	 */
+	private Geometry edgesGeometry;
+
+	/**
+	 *
+	 * @param geometryFactory The geometry factory for the graph.
+	 * @param parameters The parameters of the mapping algorithm.
+	 */
+	VisibilityGraphPlanner(GeometryFactory geometryFactory, Parameters parameters) {
+		this.geometryFactory = geometryFactory;
+		this.parameters = parameters;
+		this.radius = parameters.getRunnerWidth();
+	}
+
+	@Override
+	public void addObstacle(Geometry obstacle) {
+		if(obstacle == null || obstacle.isEmpty()) return;
+		Geometry grown = obstacle.buffer(radius);
+		obstacles.add(obstacle);
+		grownObstacles.add(grown);
+		PreparedGeometry preparedGrown = PreparedGeometryFactory.prepare(grown);
+		removeBlockedEdges(preparedGrown);
+		removeCoveredNodes(preparedGrown);
+		int firstNew = nodes.size();
+		for (Coordinate vertex : vertices(obstacle)) {
+			if(!grownObstacles.intersects(geometryFactory.createPoint(vertex))) nodes.add(vertex);
+		}
+		for (int i = firstNew; i < nodes.size(); i++) {
+			for (int j = 0; j < i; j++) {
+				if(isVisible(nodes.get(i), nodes.get(j))) addEdge(i, j);
+			}
+		}
+	}
+
+	@Override
+	public List<Coordinate> plan(Coordinate origin, Coordinate destination) {
+		int n = nodes.size();
+		Coordinate[] allNodes = nodes.toArray(new Coordinate[n + 2]);
+		allNodes[n] = origin;
+		allNodes[n + 1] = destination;
+		int[] sources = Arrays.copyOf(edgeSources, edgeCount + 2 * n + 1);
+		int[] targets = Arrays.copyOf(edgeTargets, edgeCount + 2 * n + 1);
+		int count = edgeCount;
+		boolean[] endInside = new boolean[2];
+		for (int end = n; end <= n + 1; end++) {
+			endInside[end - n] = grownObstacles.intersects(geometryFactory.createPoint(allNodes[end]));
+			for (int i = 0; i < n; i++) {
+				if(isVisibleFromEnd(allNodes[end], allNodes[i], endInside[end - n])){
+					sources[count] = end;
+					targets[count] = i;
+					count++;
+				}
+			}
+		}
+		if(isVisibleFromEnd(origin, destination, endInside[0] || endInside[1])){
+			sources[count] = n;
+			targets[count] = n + 1;
+			count++;
+		}
+		LineString[] lines = new LineString[count];
+		for (int e = 0; e < count; e++) {
+			lines[e] = geometryFactory.createLineString(new Coordinate[]{allNodes[sources[e]], allNodes[targets[e]]});
+		}
+		edgesGeometry = geometryFactory.createMultiLineString(lines);
+		RoadmapGraph graph = new RoadmapGraph(allNodes, sources, targets, count);
+		int[] nodePath = graph.shortestPath(n, n + 1, parameters.getPathSearch() == Parameters.PathSearch.A_STAR);
+		if(nodePath == null) return null;
+		ArrayList<Coordinate> path = new ArrayList<Coordinate>();
+		for (int node : nodePath) {
+			path.add(allNodes[node]);
+		}
+		return path;
+	}
+
+	@Override
+	public Geometry getEdgesGeometry() {
+		return edgesGeometry;
+	}
+
+	/**
+	 * @return The number of nodes of the graph, without the ends of the plans.
+	 */
+	int getNodeCount(){
+		return nodes.size();
+	}
+
+	/**
+	 * @return The number of edges of the graph, without the ones of the ends
+	 * of the plans.
+	 */
+	int getEdgeCount(){
+		return edgeCount;
+	}
+
+	/**
+	 * @param obstacle The object.
+	 * @return The vertices of the outside of the object, grown a bit more than
+	 * the clearance.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Coordinate> vertices(Geometry obstacle){
+		ArrayList<Coordinate> vertices = new ArrayList<Coordinate>();
+		Geometry grown = obstacle.buffer(radius * VERTEX_MARGIN, VERTEX_QUADRANT_SEGMENTS);
+		List<Polygon> polygons = PolygonExtracter.getPolygons(grown);
+		for (Polygon polygon : polygons) {
+			Coordinate[] ring = polygon.getExteriorRing().getCoordinates();
+			//The last coordinate closes the ring.
+			for (int i = 0; i < ring.length - 1; i++) {
+				vertices.add(ring[i]);
+			}
+		}
+		return vertices;
+	}
+
+	/**
+	 * @param a A point out of the grown objects.
+	 * @param b Another point out of the grown objects.
+	 * @return <code>true</code> if the segment between the points doesn't
+	 * touch the grown objects.
+	 */
+	private boolean isVisible(Coordinate a, Coordinate b){
+		return !grownObstacles.intersects(geometryFactory.createLineString(new Coordinate[]{a, b}));
+	}
+
+	/**
+	 * The robot is usually next to an object when it plans, inside the grown
+	 * object, so the segments from an end of a plan inside a grown object are
+	 * only checked against the objects themselves.
+	 * @param end The origin or the destination of the plan.
+	 * @param other The other point of the segment.
+	 * @param endInside If the end is inside a grown object.
+	 * @return <code>true</code> if the robot can drive from the end to the point.
+	 */
+	private boolean isVisibleFromEnd(Coordinate end, Coordinate other, boolean endInside){
+		LineString line = geometryFactory.createLineString(new Coordinate[]{end, other});
+		if(obstacles.intersects(line)) return false;
+		return endInside || !grownObstacles.intersects(line);
+	}
+
+	/**
+	 * Removes the edges a new grown object blocks.
+	 * @param grown The new grown object.
+	 */
+	private void removeBlockedEdges(PreparedGeometry grown){
+		int kept = 0;
+		for (int e = 0; e < edgeCount; e++) {
+			Coordinate a = nodes.get(edgeSources[e]);
+			Coordinate b = nodes.get(edgeTargets[e]);
+			boolean blocked = grown.getGeometry().getEnvelopeInternal().intersects(new Envelope(a, b))
+					&& grown.intersects(geometryFactory.createLineString(new Coordinate[]{a, b}));
+			if(!blocked){
+				edgeSources[kept] = edgeSources[e];
+				edgeTargets[kept] = edgeTargets[e];
+				kept++;
+			}
+		}
+		edgeCount = kept;
+	}
+
+	/**
+	 * Removes the nodes inside a new grown object, which can't be reached
+	 * any more. Their edges were all blocked by the object. Nodes left
+	 * without edges for other reasons are kept, since a later object may be
+	 * the one that gives them edges again.
+	 * @param grown The new object, grown by the clearance.
+	 */
+	private void removeCoveredNodes(PreparedGeometry grown){
+		int n = nodes.size();
+		Envelope envelope = grown.getGeometry().getEnvelopeInternal();
+		int[] newIndex = new int[n];
+		int kept = 0;
+		for (int i = 0; i < n; i++) {
+			Coordinate node = nodes.get(i);
+			if(!envelope.intersects(node) || !grown.intersects(geometryFactory.createPoint(node))){
+				nodes.set(kept, nodes.get(i));
+				newIndex[i] = kept++;
+			}
+		}
+		if(kept == n) return;
+		nodes.subList(kept, n).clear();
+		for (int e = 0; e < edgeCount; e++) {
+			edgeSources[e] = newIndex[edgeSources[e]];
+			edgeTargets[e] = newIndex[edgeTargets[e]];
+		}
+	}
+
+	private void addEdge(int a, int b){
+		if(edgeCount == edgeSources.length){
+			edgeSources = Arrays.copyOf(edgeSources, 2 * edgeCount);
+			edgeTargets = Arrays.copyOf(edgeTargets, 2 * edgeCount);
+		}
+		edgeSources[edgeCount] = a;
+		edgeTargets[edgeCount] = b;
+		edgeCount++;
+	}
+}
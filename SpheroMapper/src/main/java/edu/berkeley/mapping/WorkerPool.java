@@ -0,0 +1,73 @@
+package edu.berkeley.mapping;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The worker threads of the parallel parts of a mapper. Each mapper has its
+ * own pool, so mappers running at once don't share workers. The workers are
+ * daemons, hold no state of their own and end when they've been idle for
+ * {@link #KEEP_ALIVE_SECONDS}, so the pool of a mapper no longer used doesn't
+ * keep threads around.
+ * @see Parameters#getWorkerThreads()
+ */
+class WorkerPool {
+	/**
+	 * How long an idle worker waits for a task before ending.
+	 */
+	static final long KEEP_ALIVE_SECONDS = 30;
+
+	/**
+	 * The number of worker threads.
+	 */
+	private final int threads;
+
+	private ExecutorService executor;
+
+	/**
+	 *
+	 * @param threads The number of worker threads. With less than two, the
+	 * parallel parts run in the calling thread.
+	 */
+	WorkerPool(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @return <code>true</code> if the work should be split across the
+	 * workers, <code>false</code> if it should be done in the calling thread.
+	 */
+	boolean isParallel(){
+		return threads > 1;
+	}
+
+	/**
+	 * @return The number of worker threads.
+	 */
+	int getThreads(){
+		return threads;
+	}
+
+	/**
+	 * @return The executor of the workers, created on the first call.
+	 */
+	synchronized ExecutorService get(){
+		if(executor == null){
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "MapperWorker");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			pool.allowCoreThreadTimeOut(true);
+			executor = pool;
+		}
+		return executor;
+	}
+}
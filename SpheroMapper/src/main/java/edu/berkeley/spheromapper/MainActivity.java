@@ -13,6 +13,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 import android.util.Log;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -136,6 +137,9 @@ public class MainActivity extends ActionBarActivity implements ActionBar.OnNavig
     protected void onPause(){
         super.onPause();
         BluetoothAdapter.getDefaultAdapter().cancelDiscovery();
+        Runner.dumpLog(new File(getRunsDir(), "log-" + System.currentTimeMillis() + ".txt"));
+        //The session goes on from the checkpoint when the robot is connected again
+        Runner.checkpoint();
         if (mSphero != null) {
             mSphero.disconnect(); // Disconnect Robot properly
         }
@@ -223,6 +227,14 @@ public class MainActivity extends ActionBarActivity implements ActionBar.OnNavig
         RobotProvider.getDefaultProvider().removeAllControls();
     }
 
+    /**
+     * @return The directory where the traces and the logs of the runs are written.
+     */
+    private File getRunsDir() {
+        File dir = getExternalFilesDir(null);
+        return dir != null ? dir : getFilesDir();
+    }
+
     private void onSpheroConnected(Robot sphero){
         // It looks like the SDK automatically pops up a Toast, so we don't need to make our own.
         //Toast.makeText(activity, "Successfully connected to Sphero", Toast.LENGTH_LONG).show();
@@ -236,7 +248,9 @@ public class MainActivity extends ActionBarActivity implements ActionBar.OnNavig
         mSphero = (Sphero) sphero;
 
         Log.d("MainActivity", "initializing Runner");
-        Runner.initialize(mSphero);
+        //Every run is recorded, so it can be replayed without the robot
+        Runner.initialize(mSphero, new File(getRunsDir(), "trace-" + System.currentTimeMillis() + ".bin"),
+                new File(getRunsDir(), "checkpoint.bin"));
 
         mSphero.getSensorControl().setRate(5);
         mSphero.getSensorControl().addSensorListener(new SensorListener() {
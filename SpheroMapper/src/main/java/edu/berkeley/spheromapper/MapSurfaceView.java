@@ -18,6 +18,8 @@ import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.WKTReader;
 
+import edu.berkeley.mapping.MapSnapshot;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -38,6 +40,11 @@ public class MapSurfaceView extends SurfaceView implements SurfaceHolder.Callbac
         private Paint collisionPaint;
         private final Object mRunLock = new Object();
         private boolean mRun;
+        private Paint freePaint;
+        // The free ground paths are only rebuilt when the layers of the map change
+        private long drawnVersion = -1;
+        private int drawnWidth, drawnHeight;
+        private final List<Path> freePaths = new ArrayList<Path>();
 
         public MapThread(SurfaceHolder surfaceHolder, Context context) {
             mSurfaceHolder = surfaceHolder;
@@ -47,6 +54,10 @@ public class MapSurfaceView extends SurfaceView implements SurfaceHolder.Callbac
             collisionPaint.setColor(Color.GREEN);
             collisionPaint.setAntiAlias(true);
             collisionPaint.setStyle(Paint.Style.FILL);
+
+            freePaint = new Paint();
+            freePaint.setColor(Color.YELLOW);
+            freePaint.setStyle(Paint.Style.FILL);
             mRun = true;
         }
 
@@ -79,7 +90,20 @@ public class MapSurfaceView extends SurfaceView implements SurfaceHolder.Callbac
         private void doDraw(Canvas c){
             c.drawColor(Color.DKGRAY);
 
-            Geometry freeGeometry = Runner.getMapper().getFreeGeometry();
+            MapSnapshot snapshot = Runner.getMapper().getSnapshot();
+            if (snapshot.getLayersVersion() != drawnVersion || getWidth() != drawnWidth || getHeight() != drawnHeight) {
+                buildFreePaths(snapshot.getFreeGeometry());
+                drawnVersion = snapshot.getLayersVersion();
+                drawnWidth = getWidth();
+                drawnHeight = getHeight();
+            }
+            for (Path path : freePaths) {
+                c.drawPath(path, freePaint);
+            }
+        }
+
+        private void buildFreePaths(Geometry freeGeometry){
+            freePaths.clear();
 /*
             String wkt = "MULTIPOLYGON (((-120 180, 152 180, 152 165, -120 165, -120 180)), \n" +
                     "  ((-130 190, -110 190, -110 -120, -130 -120, -130 190)), \n" +
@@ -119,14 +143,9 @@ public class MapSurfaceView extends SurfaceView implements SurfaceHolder.Callbac
                     path.moveTo((float) converter.convertX(coordinate.x),
                             (float) converter.convertY(coordinate.y));
 
-                    Paint paint = new Paint();
-                    paint.setColor(Color.YELLOW);
-                    paint.setStyle(Paint.Style.FILL);
-                    c.drawPath(path, paint);
+                    freePaths.add(path);
                 }
             }
-
-
         }
 
         private class CoordinateConverter {
@@ -1,31 +1,158 @@
 package edu.berkeley.spheromapper;
 
 import edu.berkeley.mapping.Commander;
+import edu.berkeley.mapping.EventPipeline;
 import edu.berkeley.mapping.Mapper;
+import edu.berkeley.mapping.MapperCheckpoint;
+import edu.berkeley.mapping.MappingEvent;
 import edu.berkeley.mapping.Parameters;
+import edu.berkeley.mapping.RingLog;
+import edu.berkeley.mapping.StateChangeListener;
+import edu.berkeley.mapping.TraceRecorder;
 import edu.berkeley.spheromapper.SpheroCommander;
 import orbotix.sphero.Sphero;
 
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
 /**
  * Created by Brandon on 11/27/13.
  */
 public class Runner {
 
+    /**
+     * The number of state changes between the checkpoints of the mapper.
+     */
+    private static final int CHECKPOINT_INTERVAL = 10;
+
     private static Commander commander;
     private static Mapper mapper;
+    private static EventPipeline eventPipeline;
+    private static TraceRecorder traceRecorder;
+    private static File checkpointFile;
 
     public static void initialize(Sphero sphero) {
+        initialize(sphero, null);
+    }
+
+    /**
+     * @param traceFile The file the events and the commands of the run are
+     *                  appended to, so the run can be replayed later, or null to
+     *                  not record them.
+     */
+    public static void initialize(Sphero sphero, File traceFile) {
+        initialize(sphero, traceFile, null);
+    }
+
+    /**
+     * @param traceFile      The file the events and the commands of the run are
+     *                       appended to, or null to not record them.
+     * @param checkpointFile The file the mapper is restored from, if it exists
+     *                       and the mapping wasn't finished, and checkpointed to
+     *                       every few state changes and when the app is paused,
+     *                       or null to not checkpoint it. A restored mapper goes
+     *                       on from where the robot is when START is pressed.
+     */
+    public static void initialize(Sphero sphero, File traceFile, File checkpointFile) {
         //Placeholders before getting the actual objects
         commander = new SpheroCommander(sphero);
-        mapper = new Mapper(commander);
+        if (eventPipeline != null) {
+            eventPipeline.stop();
+        }
+        closeTrace();
+        Parameters parameters = new Parameters();
+        Log.i("Runner", "Random seed: " + parameters.getRandomSeed());
+        if (traceFile != null) {
+            try {
+                //Only the mapper's commands are recorded, not the manual ones
+                traceRecorder = new TraceRecorder(commander, traceFile, parameters);
+            } catch (IOException e) {
+                Log.e("Runner", "Can't record the trace to " + traceFile, e);
+            }
+        }
+        if (traceRecorder != null) {
+            mapper = new Mapper(traceRecorder, parameters);
+            mapper.addMappingEventListener(traceRecorder);
+        } else {
+            mapper = new Mapper(commander, parameters);
+        }
+        Runner.checkpointFile = checkpointFile;
+        if (checkpointFile != null) {
+            restore();
+            mapper.addStateChangeListener(new StateChangeListener() {
+                private int stateChanges;
 
+                @Override
+                public void onStateChange(Mapper.State oldState, Mapper.State newState, MappingEvent event) {
+                    //Already in the mapping thread
+                    if (++stateChanges % CHECKPOINT_INTERVAL == 0 || newState == Mapper.State.FINISHED) {
+                        mapper.checkpoint().writeInBackground(Runner.checkpointFile);
+                    }
+                }
+            });
+        }
+        //The sensor callbacks only queue the events, the mapping runs in the pipeline's thread
+        eventPipeline = new EventPipeline(mapper);
+        eventPipeline.start();
     }
 
     public static Mapper getMapper() {
         return mapper;
     }
 
+    public static EventPipeline getEventPipeline() {
+        return eventPipeline;
+    }
+
     public static Commander getCommander() {
         return commander;
     }
+
+    /**
+     * Checkpoints the mapper, if it's checkpointed. It only asks the mapping
+     * thread to take the checkpoint and returns, so it's safe in the UI thread.
+     */
+    public static void checkpoint() {
+        if (eventPipeline == null || checkpointFile == null) return;
+        eventPipeline.requestCheckpoint(checkpointFile);
+    }
+
+    private static void restore() {
+        if (!checkpointFile.exists()) return;
+        try {
+            MapperCheckpoint checkpoint = MapperCheckpoint.read(checkpointFile, mapper.getParameters());
+            if (checkpoint.getState() == Mapper.State.FINISHED) return;
+            mapper.restore(checkpoint);
+            Log.i("Runner", "Restored the mapper in state " + checkpoint.getState() + " from " + checkpointFile);
+        } catch (IOException e) {
+            Log.e("Runner", "Can't restore the mapper from " + checkpointFile, e);
+        }
+    }
+
+    /**
+     * Writes what the mapper and the commander logged lately to a file.
+     * @param file The file.
+     */
+    public static void dumpLog(File file) {
+        try {
+            PrintStream out = new PrintStream(file);
+            RingLog.dump(out);
+            out.close();
+        } catch (IOException e) {
+            Log.e("Runner", "Can't write the log to " + file, e);
+        }
+    }
+
+    private static void closeTrace() {
+        if (traceRecorder == null) return;
+        try {
+            traceRecorder.close();
+        } catch (IOException e) {
+            Log.e("Runner", "Error recording the trace", e);
+        }
+        traceRecorder = null;
+    }
 }
@@ -1,14 +1,14 @@
 package edu.berkeley.spheromapper;
 
-import android.util.Log;
-
 import com.vividsolutions.jts.geom.Coordinate;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import edu.berkeley.mapping.Commander;
 import edu.berkeley.mapping.MappingEvent;
+import edu.berkeley.mapping.RingLog;
 import orbotix.robot.base.CollisionDetectedAsyncData;
 import orbotix.robot.sensor.DeviceSensorsData;
 import orbotix.sphero.CollisionListener;
@@ -21,12 +21,24 @@ import orbotix.sphero.Sphero;
  */
 public class SpheroCommander implements Commander{
 
+    private static final RingLog.Message DRIVE_MESSAGE = RingLog.message(RingLog.Category.COMMANDER, "Starting to drive in {0} for {1}");
+    private static final RingLog.Message COLLISION_MESSAGE = RingLog.message(RingLog.Category.COMMANDER, "Collision at ({0}, {1}) with angle={2}");
+    private static final RingLog.Message EVENT_MESSAGE = RingLog.message(RingLog.Category.COMMANDER, "Reporting event {0} at ({1}, {2})", MappingEvent.Type.class);
+    private static final RingLog.Message FINISH_MESSAGE = RingLog.message(RingLog.Category.COMMANDER, "Finished event");
+    private static final RingLog.Message DRIVE_INIT_MESSAGE = RingLog.message(RingLog.Category.SENSOR, "Initializing drive listener for {0}");
+    private static final RingLog.Message DRIVE_UPDATE_MESSAGE = RingLog.message(RingLog.Category.SENSOR, "Drive updated: currX = {0}, currY = {1}");
+    private static final RingLog.Message DRIVE_START_MESSAGE = RingLog.message(RingLog.Category.SENSOR, "Drive start position ({0}, {1})");
+    private static final RingLog.Message DRIVE_DONE_MESSAGE = RingLog.message(RingLog.Category.SENSOR, "Drive distance {0} made at ({1}, {2})");
+    private static final RingLog.Message DRIVE_CONTINUE_MESSAGE = RingLog.message(RingLog.Category.SENSOR, "Continuing the drive using {0}");
+    private static final RingLog.Message SQUARE_TURN_MESSAGE = RingLog.message(RingLog.Category.SENSOR, "Square turn {0} at ({1}, {2})");
+
     private Sphero sphero;
     private float currentHeading = 0.0f;
     private static final float SQUARE_LENGTH = 25.0f;
     private static final float DEFAULT_DRIVE_SPEED = 0.25f;
-    private boolean collisionDetected;
-    private float collisionAngle;
+    // Set by the collision thread and cleared by the sensor thread that reports the collision
+    private final AtomicBoolean collisionDetected = new AtomicBoolean();
+    private volatile float collisionAngle;
     private boolean distanceMade;
     private DistanceTraveledListener distanceTraveledListener;
     private SquareTraveledListener squareTraveledListener;
@@ -38,7 +50,6 @@ public class SpheroCommander implements Commander{
 
     public SpheroCommander(Sphero sphero) {
         this.sphero = sphero;
-        collisionDetected = false;
         sphero.getCollisionControl().addCollisionListener(new CollisionReportListener());
         distanceTraveledListener = new DistanceTraveledListener();
         squareTraveledListener = new SquareTraveledListener();
@@ -51,7 +62,7 @@ public class SpheroCommander implements Commander{
     private synchronized void drive(float headingVariation, float distance, boolean isReportFinish) {
         sphero.stop();
         disableListeners();
-        Log.d("DRIVING", "Starting to drive in " + headingVariation + " for " + distance);
+        RingLog.log(DRIVE_MESSAGE, headingVariation, distance);
         currentHeading = (currentHeading - headingVariation) % 360;
         if (currentHeading < 0) {
             currentHeading += 360;
@@ -111,9 +122,15 @@ public class SpheroCommander implements Commander{
         sphero.stop();
     }
 
+    /**
+     * The Sphero's heading is clockwise, with 0 along the y axis of its
+     * locator, so it's converted to the mapper's counter-clockwise heading
+     * from the x axis.
+     */
     @Override
     public float getCurrentHeading() {
-        return currentHeading;
+        float heading = (90 - currentHeading) % 360;
+        return heading < 0 ? heading + 360 : heading;
     }
 
     public static float distanceTraveled(float startX, float startY, float endX, float endY) {
@@ -121,12 +138,10 @@ public class SpheroCommander implements Commander{
     }
 
     private void processCollision(float x, float y) {
-        Log.d("Collision", "Collision has been found!");
         MappingEvent collisionEvent = new MappingEvent(MappingEvent.Type.COLLISION, x, y, collisionAngle);
-        Log.d("SpheroCommander", "Reporting event " + collisionEvent.getType().name() + " at ("+ x + ", " + y + ") with angle=" + collisionAngle);
+        RingLog.log(COLLISION_MESSAGE, x, y, collisionAngle);
         finish();
-        Runner.getMapper().reportEvent(collisionEvent);
-        collisionDetected = false;
+        Runner.getEventPipeline().report(collisionEvent);
     }
 
     private void processSquareSuccess(float x, float y) {
@@ -145,15 +160,18 @@ public class SpheroCommander implements Commander{
         processEvent(x, y, MappingEvent.Type.POINT_REACHED);
     }
 
-    private synchronized void processEvent(float x, float y, MappingEvent.Type event) {
+    private void processEvent(float x, float y, MappingEvent.Type event) {
         MappingEvent collisionEvent = new MappingEvent(event, x, y);
-        Log.d("SpheroCommander", "Reporting event " + event.name() + " at ("+ x + ", " + y + ")");
-        finish();
-        Runner.getMapper().reportEvent(collisionEvent);
+        synchronized (this) {
+            RingLog.log(EVENT_MESSAGE, event.ordinal(), x, y);
+            finish();
+        }
+        // Reported out of the lock: under the BLOCK policy a full queue waits for the mapping thread, which may be driving
+        Runner.getEventPipeline().report(collisionEvent);
     }
 
     private void finish() {
-        Log.d("SUCCESS", "Finished event");
+        RingLog.log(FINISH_MESSAGE);
         disableListeners();
         sphero.stop();
     }
@@ -183,7 +201,7 @@ public class SpheroCommander implements Commander{
             this.isReportFinish = isReportFinish;
             distanceMade = false;
             isEnabled = true;
-            Log.d("INIT", "initializing listener");
+            RingLog.log(DRIVE_INIT_MESSAGE, distanceToTravel);
         }
 
         @Override
@@ -195,9 +213,8 @@ public class SpheroCommander implements Commander{
                 //}
                 float currX = deviceSensorsData.getLocatorData().getPositionX();
                 float currY = deviceSensorsData.getLocatorData().getPositionY();
-                Log.d("Drive updated", "currX = " + currX + ", currY = " + currY);
-                if (collisionDetected) {
-                    Log.d("INIT", "CollisionDetected");
+                RingLog.log(DRIVE_UPDATE_MESSAGE, currX, currY);
+                if (collisionDetected.compareAndSet(true, false)) {
                     isEnabled = false;
                     processCollision(currX, currY);
                     return;
@@ -207,11 +224,11 @@ public class SpheroCommander implements Commander{
                         startX = currX;
                         startY = currY;
                         currentState = DRIVE_TRANSITION_STATE.DRIVE;
-                        Log.d("INIT", "Initializing start position values");
+                        RingLog.log(DRIVE_START_MESSAGE, currX, currY);
                         break;
                     case DRIVE:
                         if (distanceTraveled(startX, startY, currX, currY) > distanceToTravel) {
-                            Log.d("INIT", "Processing to finish");
+                            RingLog.log(DRIVE_DONE_MESSAGE, distanceToTravel, currX, currY);
                             distanceMade = true;
                             isEnabled = false;
                             if (isReportFinish) {
@@ -221,7 +238,7 @@ public class SpheroCommander implements Commander{
                             }
                             return;
                         }
-                        Log.d("INIT", "Continuing the drive using " + currentHeading);
+                        RingLog.log(DRIVE_CONTINUE_MESSAGE, currentHeading);
                         sphero.drive(currentHeading, DEFAULT_DRIVE_SPEED);
                         break;
                 }
@@ -254,7 +271,7 @@ public class SpheroCommander implements Commander{
         }
 
         private void resetPositionAndTurn(float newX, float newY) {
-            Log.d("Reset", "Reseting from " + newX + " and " + newY);
+            RingLog.log(SQUARE_TURN_MESSAGE, turnsMade + 1, newX, newY);
             startX = newX;
             startY = newY;
             sphero.stop();
@@ -277,7 +294,7 @@ public class SpheroCommander implements Commander{
                 //currentHeading = deviceSensorsData.getAttitudeData().yaw;
                 float currX = deviceSensorsData.getLocatorData().getPositionX();
                 float currY = deviceSensorsData.getLocatorData().getPositionY();
-                if (collisionDetected) {
+                if (collisionDetected.compareAndSet(true, false)) {
                     processCollision(currX, currY);
                     return;
                 }
@@ -289,9 +306,7 @@ public class SpheroCommander implements Commander{
                         break;
                     case DRIVE:
                         if (turnsMade == 0) {
-                            Log.d("First turn", "GO HERE");
                             if (distanceTraveled(startX, startY, currX, currY) > (SQUARE_LENGTH / 2.0f)) {
-                                Log.d("First turn", "EVENTUALLY HERE");
                                 resetPositionAndTurn(currX, currY);
                                 turnsMade++;
                             }
@@ -360,7 +375,7 @@ public class SpheroCommander implements Commander{
                     case DRIVE:
                         float currX = deviceSensorsData.getLocatorData().getPositionX();
                         float currY = deviceSensorsData.getLocatorData().getPositionY();
-                        if (collisionDetected) {
+                        if (collisionDetected.compareAndSet(true, false)) {
                             processCollision(currX, currY);
                             return;
                         }
@@ -395,10 +410,11 @@ public class SpheroCommander implements Commander{
 
         @Override
         public void collisionDetected(CollisionDetectedAsyncData collisionDetectedAsyncData) {
-            collisionDetected = true;
             short impactX = collisionDetectedAsyncData.getImpactPower().x;
             short impactY = collisionDetectedAsyncData.getImpactPower().y;
             collisionAngle = (float) (Math.atan2(impactY, impactX) * 180.0f / Math.PI);
+            // The angle must be set before the sensor threads see the collision
+            collisionDetected.set(true);
         }
     }
 
@@ -46,7 +46,7 @@ public class ViewMapFragment extends Fragment implements SpheroListenerFragment
             @Override
             public void onClick(View v) {
                 Log.d("ViewMap", "Reporting START event with position=(" + positionX + ", "+ positionY + ")");
-                Runner.getMapper().reportEvent(new MappingEvent(MappingEvent.Type.START, positionX, positionY));
+                Runner.getEventPipeline().report(new MappingEvent(MappingEvent.Type.START, positionX, positionY));
             }
         });
         return rootView;
@@ -0,0 +1,355 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.util.PolygonExtracter;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+import edu.berkeley.mapping.test.jbox2d.HeadlessSimulation;
+import edu.berkeley.mapping.test.utils.CoordinateScaleFilter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the latency and the allocation of the hot paths of the mapper, on
+ * maps of several sizes.
+ * The maps are built by mapping the arenas of a directory in the headless
+ * simulation, scaled up to make them larger. The events of each simulation
+ * are timed by type, and then each operation the mapper does while handling
+ * them is repeated on the final map: building the swath of an event, planning
+ * a path, finding the nearest unknown region, computing the unknown area,
+ * checking if a point is free, scoring the headings, calculating the
+ * destination and checking if the mapping is done. The results are
+ * printed as CSV lines with the arena, the scale, the operation, the time per
+ * operation and the bytes allocated per operation. The mapper is seeded, so
+ * runs of different commits can be compared line by line.
+ * <p>
+ * The simulation seldom closes the perimeter of the scaled up arenas in its
+ * time, and without a perimeter the destination and the end of the mapping
+ * cost nothing. So they're also measured on square maps of several sides,
+ * built directly in the map store of each type: the perimeter and free
+ * ground swept row by row over half of the square. Those lines have
+ * <code>square(&lt;map store type&gt;)</code> as the arena and the side as
+ * the scale.
+ * <p>
+ * The benchmark is in the mapper's package, unlike the other tests, because
+ * it measures the map stores, the planners, the heading scorers and the steps
+ * of the mapper directly, and those aren't part of the public interface.
+ * <p>
+ * Usage: <code>MapperBenchmark [arenas directory] [iterations]
+ * [scales...]</code>
+ * @author Group
+ */
+public class MapperBenchmark {
+	/**
+	 * The maximum simulated time to build a map, in seconds.
+	 */
+	private static final float MAX_TIME = 1200;
+
+	/**
+	 * The random seed of the mappers and the planners, so the maps and the
+	 * measures are the same in every run.
+	 */
+	private static final long SEED = 0;
+
+	/**
+	 * The sides of the square maps.
+	 */
+	private static final double[] SIDES = {25, 50, 100, 200};
+
+	/**
+	 * An operation to be measured.
+	 */
+	private static abstract class Operation {
+		/**
+		 * @param i The number of the iteration.
+		 * @return Anything computed, so the work isn't optimized away.
+		 */
+		abstract double run(int i);
+	}
+
+	/**
+	 * A commander that ignores the commands, for the mappers of the square maps.
+	 */
+	private static class IdleCommander implements Commander {
+		@Override
+		public void drive(float headingVariation, float distance) {}
+
+		@Override
+		public void drive(float headingVariation) {}
+
+		@Override
+		public void drive(List<Coordinate> points) {}
+
+		@Override
+		public void makeLeftSquare(float collisionAngle) {}
+
+		@Override
+		public void makeRightSquare(float collisionAngle) {}
+
+		@Override
+		public void stop() {}
+
+		@Override
+		public float getCurrentHeading() {
+			return 0;
+		}
+	}
+
+	/**
+	 * Where the results of the operations are kept, so they aren't optimized away.
+	 */
+	private static volatile double sink;
+
+	private final PrintStream out;
+
+	private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+	private final int iterations;
+
+	private MapperBenchmark(PrintStream out, int iterations) {
+		this.out = out;
+		this.iterations = iterations;
+	}
+
+	public static void main(String[] args) throws IOException, ParseException {
+		File arenasDirectory = new File(args.length > 0 ? args[0] : "test/arenas");
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		double[] scales = {1, 2, 4};
+		if(args.length > 2){
+			scales = new double[args.length - 2];
+			for (int i = 2; i < args.length; i++) {
+				scales[i - 2] = Double.parseDouble(args[i]);
+			}
+		}
+		File[] arenas = arenasDirectory.listFiles();
+		if(arenas == null) throw new IOException("Not a directory: " + arenasDirectory);
+		Arrays.sort(arenas);
+
+		MapperBenchmark benchmark = new MapperBenchmark(System.out, iterations);
+		benchmark.out.println("arena,scale,operation,operations,ns_per_op,bytes_per_op");
+		for (File arena : arenas) {
+			if(!arena.getName().endsWith(".wkt")) continue;
+			String wkt = new String(Files.readAllBytes(arena.toPath()), Charset.forName("UTF-8"));
+			for (double scale : scales) {
+				benchmark.run(arena.getName().replaceFirst("\\.wkt$", ""), wkt, scale);
+			}
+		}
+		for (Parameters.MapStoreType type : Parameters.MapStoreType.values()) {
+			for (double side : SIDES) {
+				benchmark.runSquare(type, side);
+			}
+		}
+	}
+
+	/**
+	 * Builds the map of an arena and measures the operations on it.
+	 */
+	private void run(String arena, String wkt, double scale) throws ParseException{
+		Geometry environment = new WKTReader().read(wkt);
+		//The same scale as the simulation's, times the benchmark's.
+		environment.apply(new CoordinateScaleFilter(.1 * scale));
+		Parameters parameters = new Parameters();
+		parameters.setCommanderDriveDistance(4);
+		parameters.setRandomSeed(SEED);
+		HeadlessSimulation simulation = new HeadlessSimulation(environment, parameters);
+		long bytes = allocatedBytes();
+		simulation.run(MAX_TIME);
+		bytes = allocatedBytes() - bytes;
+		String prefix = arena + "," + scale + ",";
+		for (MappingEvent.Type type : MappingEvent.Type.values()) {
+			int count = simulation.getReportCount(type);
+			if(count > 0) out.println(prefix + "reportEvent(" + type + ")," + count + "," + simulation.getReportNanos(type) / count + ",");
+		}
+		if(bytes >= 0) out.println(prefix + "reportEvent(all)," + simulation.getEventCount() + ",," + bytes / Math.max(1, simulation.getEventCount()));
+
+		Mapper mapper = simulation.getMapper();
+		final MapStore mapStore = mapper.getMapStore();
+		final GeometryFactory geometryFactory = new GeometryFactory(RobustOverlay.precisionModel(parameters.getSnapPrecision()));
+		Envelope bounds = mapStore.getPerimeterGeometry().getEnvelopeInternal();
+		if(bounds.isNull()) bounds = mapStore.getFreeGeometry().getEnvelopeInternal();
+		final Coordinate[] points = randomPoints(bounds, iterations);
+		final Coordinate[] freePoints = randomFreePoints(mapStore, bounds, iterations);
+		final float driveDistance = parameters.getCommanderDriveDistance();
+
+		measureDestination(prefix, mapper, freePoints.length > 0 ? freePoints : points);
+
+		final SwathGenerator swathGenerator = new SwathGenerator(geometryFactory, parameters.getRunnerWidth());
+		measure(prefix + "generateSwath", new Operation() {
+			@Override
+			double run(int i) {
+				Coordinate point = points[i];
+				return swathGenerator.generate(point.x, point.y, point.x + driveDistance, point.y).getArea();
+			}
+		});
+		measure(prefix + "isFree", new Operation() {
+			@Override
+			double run(int i) {
+				return mapStore.isFree(points[i]) ? 1 : 0;
+			}
+		});
+		measure(prefix + "getUnknownArea", new Operation() {
+			@Override
+			double run(int i) {
+				return mapStore.getUnknownArea();
+			}
+		});
+		final double minArea = (mapStore.getPerimeterGeometry().getArea() - mapStore.getObjectsGeometry().getArea()) / 100;
+		measure(prefix + "getNearestUnknownRegion", new Operation() {
+			@Override
+			double run(int i) {
+				Geometry region = mapStore.getNearestUnknownRegion(points[i], minArea);
+				return region == null ? 0 : region.getArea();
+			}
+		});
+		if(freePoints.length > 1){
+			for (Parameters.PathPlannerType type : Parameters.PathPlannerType.values()) {
+				final PathPlanner planner = type == Parameters.PathPlannerType.RANDOM_ROADMAP
+						? new RandomRoadmapPlanner(geometryFactory, mapStore, parameters, new Random(SEED))
+						: new VisibilityGraphPlanner(geometryFactory, parameters);
+				@SuppressWarnings("unchecked")
+				List<Polygon> objects = PolygonExtracter.getPolygons(mapStore.getObjectsGeometry());
+				for (Polygon object : objects) {
+					planner.addObstacle(object);
+				}
+				measure(prefix + "plan(" + type + ")", new Operation() {
+					@Override
+					double run(int i) {
+						List<Coordinate> path = planner.plan(freePoints[i % freePoints.length], freePoints[(i + 1) % freePoints.length]);
+						return path == null ? 0 : path.size();
+					}
+				});
+			}
+		}
+		final double[] scores = new double[(int) Math.floor(180 / parameters.getHeadingResolution()) + 1];
+		for (Parameters.HeadingScorerType type : Parameters.HeadingScorerType.values()) {
+			final HeadingScorer scorer = type == Parameters.HeadingScorerType.RAY_CAST
+					? new RayCastHeadingScorer(mapStore, parameters)
+					: new OverlayHeadingScorer(geometryFactory, mapStore, parameters, new WorkerPool(parameters.getWorkerThreads()));
+			measure(prefix + "scoreHeadings(" + type + ")", new Operation() {
+				@Override
+				double run(int i) {
+					scorer.score(freePoints.length > 0 ? freePoints[i % freePoints.length] : points[i], i, 10, scores);
+					return scores[0];
+				}
+			});
+		}
+	}
+
+	/**
+	 * Builds a square map of a side and measures the steps of the mapper
+	 * that depend on its size.
+	 */
+	private void runSquare(Parameters.MapStoreType type, double side){
+		Parameters parameters = new Parameters();
+		parameters.setCommanderDriveDistance(4);
+		parameters.setRandomSeed(SEED);
+		parameters.setMapStoreType(type);
+		Mapper mapper = new Mapper(new IdleCommander(), parameters);
+		MapStore mapStore = mapper.getMapStore();
+		GeometryFactory geometryFactory = new GeometryFactory(RobustOverlay.precisionModel(parameters.getSnapPrecision()));
+		float width = parameters.getRunnerWidth();
+		Envelope square = new Envelope(0, side, 0, side);
+		mapStore.addPerimeter(geometryFactory.toGeometry(square).getBoundary().buffer(width));
+		SwathGenerator swathGenerator = new SwathGenerator(geometryFactory, width);
+		double step = parameters.getCommanderDriveDistance();
+		int swaths = 0;
+		for (double y = width / 2; y < side / 2; y += width) {
+			for (double x = 0; x + step <= side; x += step) {
+				mapStore.addFree(swathGenerator.generate(x, y, x + step, y));
+				swaths++;
+				if(parameters.getCompactionInterval() > 0 && swaths % parameters.getCompactionInterval() == 0) mapStore.compact();
+			}
+		}
+		Envelope free = new Envelope(0, side, 0, side / 2);
+		measureDestination("square(" + type + ")," + side + ",", mapper, randomPoints(free, iterations));
+	}
+
+	/**
+	 * Measures calculating the destination from each point, and checking if
+	 * the mapping is done.
+	 */
+	private void measureDestination(String prefix, final Mapper mapper, final Coordinate[] points){
+		measure(prefix + "calculateDestination", new Operation() {
+			@Override
+			double run(int i) {
+				Coordinate point = points[i % points.length];
+				Coordinate destination = mapper.calculateDestination(new MappingEvent(MappingEvent.Type.DISTANCE_REACHED, (float) point.x, (float) point.y));
+				return destination == null ? 0 : destination.x;
+			}
+		});
+		measure(prefix + "isDone", new Operation() {
+			@Override
+			double run(int i) {
+				return mapper.isDone() ? 1 : 0;
+			}
+		});
+	}
+
+	/**
+	 * Runs an operation a tenth of the iterations to warm up and then the
+	 * iterations, and prints the time and the allocation per operation.
+	 */
+	private void measure(String name, Operation operation){
+		double result = 0;
+		for (int i = 0; i < iterations / 10; i++) {
+			result += operation.run(i);
+		}
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			result += operation.run(i);
+		}
+		long nanos = System.nanoTime() - start;
+		bytes = allocatedBytes() - bytes;
+		sink = result;
+		out.println(name + "," + iterations + "," + nanos / iterations + "," + (bytes >= 0 ? String.valueOf(bytes / iterations) : ""));
+	}
+
+	/**
+	 * @return The bytes allocated by the current thread so far, or a negative
+	 * number if the virtual machine doesn't tell it.
+	 */
+	private long allocatedBytes(){
+		if(threadMXBean instanceof com.sun.management.ThreadMXBean){
+			return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * The points are always the same for the same area.
+	 */
+	private static Coordinate[] randomPoints(Envelope bounds, int count){
+		Random random = new Random(0);
+		Coordinate[] points = new Coordinate[count];
+		for (int i = 0; i < count; i++) {
+			points[i] = new Coordinate(bounds.getMinX() + random.nextDouble() * bounds.getWidth(), bounds.getMinY() + random.nextDouble() * bounds.getHeight());
+		}
+		return points;
+	}
+
+	/**
+	 * @return Up to a hundred random points of the free ground.
+	 */
+	private static Coordinate[] randomFreePoints(MapStore mapStore, Envelope bounds, int tries){
+		Coordinate[] points = randomPoints(bounds, tries);
+		Coordinate[] free = new Coordinate[100];
+		int count = 0;
+		for (int i = 0; i < points.length && count < free.length; i++) {
+			if(mapStore.isFree(points[i])) free[count++] = points[i];
+		}
+		return Arrays.copyOf(free, count);
+	}
+}
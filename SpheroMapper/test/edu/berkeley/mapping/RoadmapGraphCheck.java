@@ -0,0 +1,96 @@
+package edu.berkeley.mapping;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the path search of the roadmap graph against Floyd-Warshall.
+ * Random graphs of random points are built, and for random pairs of nodes
+ * the length of the path found by Dijkstra's algorithm and by A* must be the
+ * shortest distance computed by Floyd-Warshall, and a path must be found
+ * exactly when the nodes are connected. Each failure is printed, and the
+ * exit code is the number of failures.
+ * <p>
+ * The check is in the mapper's package, unlike the other tests, because the
+ * roadmap graph isn't part of the public interface.
+ * <p>
+ * Usage: <code>RoadmapGraphCheck [graphs] [seed]</code>
+ * @author Group
+ * @see RoadmapGraph
+ */
+public class RoadmapGraphCheck {
+	private static final double EPSILON = 1e-9;
+
+	public static void main(String[] args) {
+		int graphs = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		Random random = new Random(args.length > 1 ? Long.parseLong(args[1]) : 0);
+		int failures = 0;
+		for (int g = 0; g < graphs; g++) {
+			int n = 2 + random.nextInt(40);
+			Coordinate[] nodes = new Coordinate[n];
+			for (int i = 0; i < n; i++) {
+				nodes[i] = new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100);
+			}
+			//From disconnected to dense graphs.
+			double density = random.nextDouble() * .3;
+			int[] sources = new int[n * n];
+			int[] targets = new int[n * n];
+			int edges = 0;
+			boolean[][] adjacent = new boolean[n][n];
+			double[][] dist = new double[n][n];
+			for (double[] row : dist) {
+				Arrays.fill(row, Double.POSITIVE_INFINITY);
+			}
+			for (int i = 0; i < n; i++) {
+				dist[i][i] = 0;
+				for (int j = i + 1; j < n; j++) {
+					if(random.nextDouble() >= density) continue;
+					sources[edges] = i;
+					targets[edges] = j;
+					edges++;
+					adjacent[i][j] = adjacent[j][i] = true;
+					dist[i][j] = dist[j][i] = nodes[i].distance(nodes[j]);
+				}
+			}
+			for (int k = 0; k < n; k++) {
+				for (int i = 0; i < n; i++) {
+					for (int j = 0; j < n; j++) {
+						if(dist[i][k] + dist[k][j] < dist[i][j]) dist[i][j] = dist[i][k] + dist[k][j];
+					}
+				}
+			}
+			RoadmapGraph graph = new RoadmapGraph(nodes, sources, targets, edges);
+			for (int q = 0; q < 10; q++) {
+				int source = random.nextInt(n);
+				int target = random.nextInt(n);
+				for (boolean aStar : new boolean[]{false, true}) {
+					int[] path = graph.shortestPath(source, target, aStar);
+					double length = length(nodes, adjacent, path, source, target);
+					boolean connected = dist[source][target] != Double.POSITIVE_INFINITY;
+					if(connected ? Math.abs(length - dist[source][target]) > EPSILON : path != null){
+						failures++;
+						System.out.println("Graph " + g + ", " + (aStar ? "A*" : "Dijkstra") + " from " + source + " to " + target
+								+ ": length " + length + ", expected " + dist[source][target]);
+					}
+				}
+			}
+		}
+		System.out.println(graphs + " graphs checked, " + failures + " failures.");
+		System.exit(failures);
+	}
+
+	/**
+	 * @return The length of the path, or infinity if there's none or it
+	 * doesn't go from the source to the target along edges.
+	 */
+	private static double length(Coordinate[] nodes, boolean[][] adjacent, int[] path, int source, int target){
+		if(path == null || path[0] != source || path[path.length - 1] != target) return Double.POSITIVE_INFINITY;
+		double length = 0;
+		for (int i = 1; i < path.length; i++) {
+			if(!adjacent[path[i - 1]][path[i]]) return Double.POSITIVE_INFINITY;
+			length += nodes[path[i - 1]].distance(nodes[path[i]]);
+		}
+		return length;
+	}
+}
@@ -0,0 +1,168 @@
+package edu.berkeley.mapping.test;
+
+import edu.berkeley.mapping.MetricsRecorder;
+import edu.berkeley.mapping.MetricsSnapshot;
+import edu.berkeley.mapping.Parameters;
+import edu.berkeley.mapping.RingLog;
+import edu.berkeley.mapping.test.jbox2d.HeadlessSimulation;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs every arena of a directory in the headless simulation, one per
+ * processor at a time, and writes the results of each one.
+ * Each arena is a <code>.wkt</code> file with the objects, like the ones of
+ * the windowed tests. Every run has its own world, runner, mapper and
+ * {@link RingLog}, so runs don't share any state. The mappers have no worker
+ * threads, so the CPU time of a run, measured in its thread, is all the work
+ * of its mapper. For each arena a <code>&lt;name&gt;.csv</code> file
+ * with the coverage over the simulated time is written, and
+ * <code>summary.csv</code> has a line per arena, with the random seed of its
+ * mapper. The measures of each mapper are written to
+ * <code>&lt;name&gt;-metrics.csv</code>. Every run takes a new seed unless one is given.
+ * <p>
+ * Usage: <code>BatchRunner [arenas directory] [results directory]
+ * [max simulated seconds] [sample interval in simulated seconds] [threads]
+ * [random seed]</code>
+ * @author Group
+ * @see HeadlessSimulation
+ */
+public class BatchRunner {
+	/**
+	 * The result of running an arena.
+	 */
+	private static class Result {
+		String name;
+		long seed;
+		boolean finished;
+		float time;
+		int events;
+		long cpuNanos;
+		double coverage;
+		/**
+		 * The simulated time and the coverage ratio of each sample.
+		 */
+		final ArrayList<float[]> coverageOverTime = new ArrayList<float[]>();
+		MetricsSnapshot metrics;
+		String error;
+	}
+
+	/**
+	 * Runs an arena.
+	 */
+	private static class Run implements Callable<Result> {
+		private final File arena;
+		private final float maxTime;
+		private final float sampleInterval;
+		/**
+		 * The random seed of the mapper, or <code>null</code> for a new one.
+		 */
+		private final Long seed;
+
+		Run(File arena, float maxTime, float sampleInterval, Long seed) {
+			this.arena = arena;
+			this.maxTime = maxTime;
+			this.sampleInterval = sampleInterval;
+			this.seed = seed;
+		}
+
+		@Override
+		public Result call() throws Exception {
+			Result result = new Result();
+			result.name = arena.getName().replaceFirst("\\.wkt$", "");
+			ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+			long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+			RingLog.setCurrent(new RingLog());
+			try {
+				String wkt = new String(Files.readAllBytes(arena.toPath()), Charset.forName("UTF-8"));
+				Parameters parameters = new Parameters();
+				parameters.setCommanderDriveDistance(4);
+				parameters.setWorkerThreads(1);
+				if(seed != null) parameters.setRandomSeed(seed);
+				result.seed = parameters.getRandomSeed();
+				HeadlessSimulation simulation = HeadlessSimulation.fromWKT(wkt, parameters);
+				MetricsRecorder metrics = new MetricsRecorder();
+				simulation.getMapper().setMetrics(metrics);
+				for (float until = sampleInterval; ; until += sampleInterval) {
+					result.finished = simulation.run(Math.min(until, maxTime));
+					result.coverageOverTime.add(new float[]{simulation.getTime(), (float) simulation.getMapper().getCoverageRatio()});
+					//Stopped before the sample time, so it's finished or idle.
+					if(until >= maxTime || simulation.getTime() < until) break;
+				}
+				result.time = simulation.getTime();
+				result.events = simulation.getEventCount();
+				result.coverage = simulation.getMapper().getCoverageRatio();
+				result.metrics = metrics.snapshot();
+			} catch (Exception ex) {
+				result.error = ex.toString();
+			} finally {
+				RingLog.setCurrent(null);
+			}
+			result.cpuNanos = threadMXBean.getCurrentThreadCpuTime() - cpuStart;
+			return result;
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		File arenasDirectory = new File(args.length > 0 ? args[0] : "test/arenas");
+		File resultsDirectory = new File(args.length > 1 ? args[1] : "batch-results");
+		float maxTime = args.length > 2 ? Float.parseFloat(args[2]) : 3600;
+		float sampleInterval = args.length > 3 ? Float.parseFloat(args[3]) : 1;
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		Long seed = args.length > 5 ? Long.valueOf(args[5]) : null;
+
+		File[] arenas = arenasDirectory.listFiles();
+		if(arenas == null) throw new IOException("Not a directory: " + arenasDirectory);
+		Arrays.sort(arenas);
+		if(!resultsDirectory.isDirectory() && !resultsDirectory.mkdirs()) throw new IOException("Can't create " + resultsDirectory);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Result>> futures = new ArrayList<Future<Result>>();
+		for (File arena : arenas) {
+			if(arena.getName().endsWith(".wkt")) futures.add(executor.submit(new Run(arena, maxTime, sampleInterval, seed)));
+		}
+		executor.shutdown();
+
+		PrintWriter summary = new PrintWriter(new FileWriter(new File(resultsDirectory, "summary.csv")));
+		summary.println("arena,seed,finished,simulated_time,events,coverage,cpu_ms,cpu_us_per_event,error");
+		for (Future<Result> future : futures) {
+			Result result;
+			try {
+				result = future.get();
+			} catch (ExecutionException ex) {
+				throw new IllegalStateException(ex.getCause());
+			}
+			PrintWriter coverage = new PrintWriter(new FileWriter(new File(resultsDirectory, result.name + ".csv")));
+			coverage.println("simulated_time,coverage");
+			for (float[] sample : result.coverageOverTime) {
+				coverage.println(sample[0] + "," + sample[1]);
+			}
+			coverage.close();
+			if(result.metrics != null){
+				PrintStream metrics = new PrintStream(new File(resultsDirectory, result.name + "-metrics.csv"));
+				result.metrics.dump(metrics);
+				metrics.close();
+			}
+			summary.println(result.name + "," + result.seed + "," + result.finished + "," + result.time + "," + result.events + "," + result.coverage + ","
+					+ result.cpuNanos / 1e6 + "," + (result.events > 0 ? result.cpuNanos / 1e3 / result.events : 0) + ","
+					+ (result.error == null ? "" : "\"" + result.error.replace("\"", "'") + "\""));
+			System.err.println(result.name + ": finished=" + result.finished + " time=" + result.time + " events=" + result.events + " coverage=" + result.coverage);
+		}
+		summary.close();
+	}
+}
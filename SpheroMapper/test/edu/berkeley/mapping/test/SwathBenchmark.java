@@ -0,0 +1,67 @@
+package edu.berkeley.mapping.test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineSegment;
+import com.vividsolutions.jts.operation.buffer.BufferOp;
+import com.vividsolutions.jts.operation.buffer.BufferParameters;
+import edu.berkeley.mapping.Parameters;
+import edu.berkeley.mapping.SwathGenerator;
+import java.util.Random;
+
+/**
+ * Compares the time to build the free ground swath of an event by buffering
+ * the segment, as the mapper used to, and with the swath generator.
+ * Usage: SwathBenchmark [events]
+ */
+public class SwathBenchmark {
+	public static void main(String[] args) {
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		Parameters parameters = new Parameters();
+		GeometryFactory geometryFactory = new GeometryFactory();
+		SwathGenerator swathGenerator = new SwathGenerator(geometryFactory, parameters.getRunnerWidth());
+
+		Random random = new Random(0);
+		double[] points = new double[4 * events];
+		for (int i = 0; i < points.length; i++) {
+			points[i] = random.nextDouble() * 200 - 100;
+		}
+
+		//Both must build the same swaths.
+		double maxDifference = 0;
+		for (int i = 0; i < 1000; i++) {
+			Geometry buffered = buffer(geometryFactory, points, i, parameters.getRunnerWidth());
+			Geometry generated = swathGenerator.generate(points[4 * i], points[4 * i + 1], points[4 * i + 2], points[4 * i + 3]);
+			maxDifference = Math.max(maxDifference, buffered.symDifference(generated).getArea());
+		}
+		System.out.println("Max area difference: " + maxDifference);
+
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			double area = 0;
+			for (int i = 0; i < events; i++) {
+				area += buffer(geometryFactory, points, i, parameters.getRunnerWidth()).getArea();
+			}
+			long buffering = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < events; i++) {
+				area -= swathGenerator.generate(points[4 * i], points[4 * i + 1], points[4 * i + 2], points[4 * i + 3]).getArea();
+			}
+			long generating = System.nanoTime() - start;
+
+			System.out.println("Round " + round + ": buffer " + buffering / events + " ns/event, generator " + generating / events + " ns/event (area check " + Math.round(area) + ").");
+		}
+	}
+
+	/**
+	 * The swath built as the mapper used to.
+	 */
+	private static Geometry buffer(GeometryFactory geometryFactory, double[] points, int i, double distance){
+		LineSegment lineSegment = new LineSegment(points[4 * i], points[4 * i + 1], points[4 * i + 2], points[4 * i + 3]);
+		BufferParameters bufferParameters = new BufferParameters();
+		bufferParameters.setEndCapStyle(BufferParameters.CAP_FLAT);
+		BufferOp bufferOp = new BufferOp(lineSegment.toGeometry(geometryFactory), bufferParameters);
+		return bufferOp.getResultGeometry(distance);
+	}
+}
@@ -0,0 +1,42 @@
+package edu.berkeley.mapping.test;
+
+import edu.berkeley.mapping.Parameters;
+import edu.berkeley.mapping.TraceReplayer;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Replays a trace recorded by a run of the robot or of the headless
+ * simulation in a new mapper, and prints how long the mapper took to handle
+ * the events.
+ * <p>
+ * Usage: <code>TraceReplay &lt;trace file&gt; [paced] [drive distance]
+ * [runner width] [contour finish radius]</code>, where <code>paced</code> is
+ * <code>true</code> to report the events with their original timing. The
+ * parameters must be the ones of the recorded run for the commands to match;
+ * the headless simulation uses 4, 1.2 and 0.9.
+ * @author Group
+ * @see edu.berkeley.mapping.TraceRecorder
+ */
+public class TraceReplay {
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if(args.length < 1){
+			System.err.println("Usage: TraceReplay <trace file> [paced] [drive distance] [runner width] [contour finish radius]");
+			System.exit(1);
+		}
+		boolean paced = args.length > 1 && Boolean.parseBoolean(args[1]);
+		Parameters parameters = new Parameters();
+		if(args.length > 2) parameters.setCommanderDriveDistance(Float.parseFloat(args[2]));
+		if(args.length > 3) parameters.setRunnerWidth(Float.parseFloat(args[3]));
+		if(args.length > 4) parameters.setContourFinishPointRadiusThreshold(Float.parseFloat(args[4]));
+
+		TraceReplayer replayer = new TraceReplayer(new FileInputStream(args[0]), parameters);
+		long start = System.nanoTime();
+		int events = replayer.replay(paced);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("Events: " + events + ", mismatched commands: " + replayer.getMismatches());
+		System.out.println("Real time: " + seconds + " s, handling time: " + replayer.getHandlingNanos() / 1e9 + " s, "
+				+ (events > 0 ? replayer.getHandlingNanos() / 1000 / events : 0) + " us per event");
+		System.out.println("Final state: " + replayer.getMapper().getState() + ", coverage ratio: " + replayer.getMapper().getCoverageRatio());
+	}
+}
@@ -0,0 +1,610 @@
+package edu.berkeley.mapping.test.jbox2d;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+import edu.berkeley.mapping.Commander;
+import edu.berkeley.mapping.Mapper;
+import edu.berkeley.mapping.MapperCheckpoint;
+import edu.berkeley.mapping.MappingEvent;
+import edu.berkeley.mapping.MetricsRecorder;
+import edu.berkeley.mapping.Parameters;
+import edu.berkeley.mapping.TraceRecorder;
+import edu.berkeley.mapping.test.utils.CoordinateScaleFilter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import org.jbox2d.callbacks.ContactImpulse;
+import org.jbox2d.callbacks.ContactListener;
+import org.jbox2d.collision.Manifold;
+import org.jbox2d.collision.WorldManifold;
+import org.jbox2d.collision.shapes.CircleShape;
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.BodyType;
+import org.jbox2d.dynamics.World;
+import org.jbox2d.dynamics.contacts.Contact;
+
+/**
+ * A simulation of the robot in a jbox2d world, without windows or threads.
+ * The world is stepped with a fixed timestep in a loop, as fast as it can.
+ * The commands of the mapper only set what the runner drives, and after each
+ * step the runner checks for collisions and for the end of the distance or
+ * the square leg it was driving. The events are queued and reported to the
+ * mapper between steps, so the mapper is never called from inside one of its
+ * own commands. The same arena and parameters always give the same
+ * simulation, since the mapper's random numbers come from the seed of the
+ * parameters.
+ * @author Group
+ * @see Simulation
+ */
+public class HeadlessSimulation {
+	/**
+	 * The simulated time of a step, in seconds.
+	 */
+	public static final float TIMESTEP = 1f / 60;
+
+	private static final int VELOCITY_ITERATIONS = 8;
+
+	private static final int POSITION_ITERATIONS = 3;
+
+	/**
+	 * The speed of the runner.
+	 */
+	private static final float SPEED = 5;
+
+	private static final float RUNNER_RADIUS = 0.6f;
+
+	/**
+	 * The length of the edge of the squares the runner makes.
+	 */
+	private static final float SQUARE_EDGE = 1;
+
+	/**
+	 * The runner is taken as stuck against something when it moves less than
+	 * this fraction of its speed in a step.
+	 */
+	private static final float STUCK_RATIO = 0.1f;
+
+	private final World world = new World(new Vec2(0, 0));
+
+	private final Body runnerBody;
+
+	private final Runner runner = new Runner();
+
+	private final Mapper mapper;
+
+	/**
+	 * The events waiting to be reported to the mapper.
+	 */
+	private final ArrayDeque<MappingEvent> events = new ArrayDeque<MappingEvent>();
+
+	/**
+	 * If the runner started touching something in the last step.
+	 */
+	private boolean contactBegun = false;
+
+	/**
+	 * Where the runner touched something in the last step.
+	 */
+	private final Vec2 contactPoint = new Vec2();
+
+	private long steps = 0;
+
+	private int eventCount = 0;
+
+	/**
+	 * The time the mapper took to handle the events, by event type.
+	 */
+	private final long[] reportNanos = new long[MappingEvent.Type.values().length];
+
+	/**
+	 * The number of events reported, by event type.
+	 */
+	private final int[] reportCounts = new int[MappingEvent.Type.values().length];
+
+	/**
+	 * The recorder of the trace, or <code>null</code> if it isn't recorded.
+	 */
+	private final TraceRecorder traceRecorder;
+
+	/**
+	 *
+	 * @param environmentGeometry The objects of the arena, each one a convex
+	 * polygon of up to eight vertices. The runner starts at the center of their
+	 * envelope.
+	 */
+	public HeadlessSimulation(Geometry environmentGeometry) {
+		this(environmentGeometry, new Parameters());
+		mapper.getParameters().setCommanderDriveDistance(4);
+	}
+
+	/**
+	 *
+	 * @param environmentGeometry The objects of the arena, each one a convex
+	 * polygon of up to eight vertices. The runner starts at the center of their
+	 * envelope.
+	 * @param parameters The parameters of the mapper. The runner width and the
+	 * contour finish radius are set to match the simulated runner.
+	 */
+	public HeadlessSimulation(Geometry environmentGeometry, Parameters parameters) {
+		this(environmentGeometry, parameters, null);
+	}
+
+	/**
+	 *
+	 * @param environmentGeometry The objects of the arena, each one a convex
+	 * polygon of up to eight vertices. The runner starts at the center of their
+	 * envelope.
+	 * @param parameters The parameters of the mapper. The runner width and the
+	 * contour finish radius are set to match the simulated runner.
+	 * @param trace Where the trace of the events and the commands is written,
+	 * or <code>null</code> to not record it.
+	 * @see #closeTrace()
+	 */
+	public HeadlessSimulation(Geometry environmentGeometry, Parameters parameters, OutputStream trace) {
+		int l = environmentGeometry.getNumGeometries();
+		for (int i = 0; i < l; i++) {
+			Coordinate[] coordinates = environmentGeometry.getGeometryN(i).getCoordinates();
+			//The last coordinate closes the ring.
+			Vec2[] vertices = new Vec2[coordinates.length - 1];
+			for (int j = 0; j < vertices.length; j++) {
+				vertices[j] = new Vec2((float) coordinates[j].x, (float) coordinates[j].y);
+			}
+			PolygonShape polygonShape = new PolygonShape();
+			polygonShape.set(vertices, vertices.length);
+			BodyDef bodyDef = new BodyDef();
+			bodyDef.type = BodyType.STATIC;
+			world.createBody(bodyDef).createFixture(polygonShape, 5.0f);
+		}
+
+		CircleShape runnerShape = new CircleShape();
+		runnerShape.setRadius(RUNNER_RADIUS);
+		BodyDef runnerBodyDef = new BodyDef();
+		runnerBodyDef.type = BodyType.DYNAMIC;
+		runnerBodyDef.fixedRotation = true;
+		Coordinate robotPosition = environmentGeometry.getEnvelopeInternal().centre();
+		runnerBodyDef.position.set((float) robotPosition.x, (float) robotPosition.y);
+		runnerBody = world.createBody(runnerBodyDef);
+		runnerBody.createFixture(runnerShape, 5.0f);
+		world.setContactListener(new SimulationContactListener());
+
+		parameters.setRunnerWidth(RUNNER_RADIUS * 2);
+		parameters.setContourFinishPointRadiusThreshold(SQUARE_EDGE * 0.9f);
+		if(trace == null){
+			traceRecorder = null;
+			mapper = new Mapper(runner, parameters);
+		} else {
+			traceRecorder = new TraceRecorder(runner, trace, parameters);
+			mapper = new Mapper(traceRecorder, parameters);
+			mapper.addMappingEventListener(traceRecorder);
+		}
+	}
+
+	/**
+	 * Runs the simulation until the mapping is finished, the runner has
+	 * nothing to do or the time is over.
+	 * @param maxTime The maximum simulated time, in seconds.
+	 * @return <code>true</code> if the mapping was finished.
+	 */
+	public boolean run(float maxTime){
+		if(mapper.getState() == Mapper.State.IDLE){
+			report(MappingEvent.Type.START);
+			flushEvents();
+		}
+		long maxSteps = (long) Math.ceil(maxTime / TIMESTEP);
+		while(steps < maxSteps && mapper.getState() != Mapper.State.FINISHED && runner.state != RunnerState.IDLE){
+			step();
+		}
+		return mapper.getState() == Mapper.State.FINISHED;
+	}
+
+	/**
+	 * Advances the world by a timestep and reports what happened.
+	 */
+	public void step(){
+		float x = runnerBody.getPosition().x;
+		float y = runnerBody.getPosition().y;
+		if(runner.state != RunnerState.IDLE) runner.applyVelocity();
+		contactBegun = false;
+		world.step(TIMESTEP, VELOCITY_ITERATIONS, POSITION_ITERATIONS);
+		steps++;
+		if(runner.state != RunnerState.IDLE){
+			float dx = runnerBody.getPosition().x - x;
+			float dy = runnerBody.getPosition().y - y;
+			boolean stuck = dx * dx + dy * dy < STUCK_RATIO * STUCK_RATIO * SPEED * SPEED * TIMESTEP * TIMESTEP;
+			if(contactBegun || (stuck && isTouching())){
+				runner.onCollision();
+			} else if(runner.legDistance() >= runner.legLength){
+				runner.onDistanceReached();
+			}
+		}
+		flushEvents();
+	}
+
+	public Mapper getMapper() {
+		return mapper;
+	}
+
+	/**
+	 * @return The number of steps run.
+	 */
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 * @return The simulated time, in seconds.
+	 */
+	public float getTime() {
+		return steps * TIMESTEP;
+	}
+
+	/**
+	 * @return The number of events reported to the mapper.
+	 */
+	public int getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * @param type An event type.
+	 * @return The time the mapper took to handle the events of the type, in
+	 * nanoseconds, including the commands it gave.
+	 */
+	public long getReportNanos(MappingEvent.Type type) {
+		return reportNanos[type.ordinal()];
+	}
+
+	/**
+	 * @param type An event type.
+	 * @return The number of events of the type reported to the mapper.
+	 */
+	public int getReportCount(MappingEvent.Type type) {
+		return reportCounts[type.ordinal()];
+	}
+
+	private void report(MappingEvent.Type type){
+		events.add(new MappingEvent(type, runnerBody.getPosition().x, runnerBody.getPosition().y, runner.heading));
+	}
+
+	private void report(MappingEvent.Type type, float angle){
+		events.add(new MappingEvent(type, runnerBody.getPosition().x, runnerBody.getPosition().y, angle));
+	}
+
+	/**
+	 * Reports the queued events, including the ones the mapper's commands
+	 * queue meanwhile.
+	 */
+	private void flushEvents(){
+		while(!events.isEmpty()){
+			MappingEvent event = events.poll();
+			long start = System.nanoTime();
+			mapper.reportEvent(event);
+			reportNanos[event.getType().ordinal()] += System.nanoTime() - start;
+			reportCounts[event.getType().ordinal()]++;
+			eventCount++;
+		}
+	}
+
+	/**
+	 * @return If the runner is touching something.
+	 */
+	private boolean isTouching(){
+		for (Contact contact = world.getContactList(); contact != null; contact = contact.getNext()) {
+			if(contact.isTouching() && involvesRunner(contact)) return true;
+		}
+		return false;
+	}
+
+	private boolean involvesRunner(Contact contact){
+		return contact.getFixtureA().getBody() == runnerBody || contact.getFixtureB().getBody() == runnerBody;
+	}
+
+	private static enum RunnerState{
+		IDLE,
+		/**
+		 * When the runner drives a distance or until a collision, for the mapper.
+		 */
+		DRIVING,
+		/**
+		 * When the runner drives backward by half the square edge.
+		 */
+		SQUARE_FASE1,
+		/**
+		 * When the runner drives to the square side (left or right) until it reaches the edge length.
+		 */
+		SQUARE_FASE2,
+		/**
+		 * When the runner drives forward until it reaches the edge length.
+		 */
+		SQUARE_FASE3,
+		/**
+		 * When the runner drives to the opposite direction of the square side (left or right) until it reaches the edge length.
+		 */
+		SQUARE_FASE4,
+		/**
+		 * When the runner drives backward by half the square edge to complete the square.
+		 */
+		SQUARE_FASE5,
+		/**
+		 * When the runner is drive through a path.
+		 */
+		PATH_DRIVING
+	}
+
+	private class Runner implements Commander{
+		private float heading = 0;
+
+		/**
+		 * Tells which direction is the current square run.
+		 */
+		private boolean isRightSquare = false;
+
+		/**
+		 * The points of the path left to drive to.
+		 */
+		private final ArrayList<Coordinate> path = new ArrayList<Coordinate>();
+
+		private RunnerState state = RunnerState.IDLE;
+
+		/**
+		 * Where the current leg started.
+		 */
+		private final Vec2 legStart = new Vec2();
+
+		/**
+		 * The length of the current leg.
+		 */
+		private float legLength;
+
+		@Override
+		public void drive(float headingVariation, float distance) {
+			state = RunnerState.DRIVING;
+			startLeg(heading + headingVariation, distance);
+		}
+
+		@Override
+		public void drive(float headingVariation) {
+			drive(headingVariation, Float.POSITIVE_INFINITY);
+		}
+
+		@Override
+		public void drive(List<Coordinate> points) {
+			path.clear();
+			path.addAll(points);
+			state = RunnerState.PATH_DRIVING;
+			driveToNextPoint();
+		}
+
+		@Override
+		public void makeLeftSquare(float collisionAngle) {
+			makeSquare(collisionAngle, false);
+		}
+
+		@Override
+		public void makeRightSquare(float collisionAngle) {
+			makeSquare(collisionAngle, true);
+		}
+
+		@Override
+		public void stop() {
+			state = RunnerState.IDLE;
+			path.clear();
+			runnerBody.setLinearVelocity(new Vec2(0, 0));
+		}
+
+		@Override
+		public float getCurrentHeading() {
+			return heading;
+		}
+
+		private void makeSquare(float collisionAngle, boolean right){
+			isRightSquare = right;
+			state = RunnerState.SQUARE_FASE1;
+			startLeg(collisionAngle - 180, SQUARE_EDGE / 2);
+		}
+
+		private void driveToNextPoint(){
+			Vec2 position = runnerBody.getPosition();
+			Coordinate destination = path.get(0);
+			double angle = 180f * Math.atan2(destination.y - position.y, destination.x - position.x) / Math.PI;
+			startLeg((float) angle, (float) Math.hypot(destination.x - position.x, destination.y - position.y));
+		}
+
+		private void startLeg(float heading, float length){
+			setHeading(heading);
+			legStart.set(runnerBody.getPosition());
+			legLength = length;
+			applyVelocity();
+		}
+
+		private void setHeading(float heading){
+			heading = heading % 360;
+			if(heading < 0) heading += 360;
+			this.heading = heading;
+		}
+
+		/**
+		 * Drives the runner in its heading, also after something pushed it.
+		 */
+		private void applyVelocity(){
+			double rad = heading * Math.PI / 180;
+			runnerBody.setLinearVelocity(new Vec2((float) Math.cos(rad) * SPEED, (float) Math.sin(rad) * SPEED));
+			runnerBody.setAngularVelocity(0);
+		}
+
+		private float legDistance(){
+			return runnerBody.getPosition().sub(legStart).length();
+		}
+
+		private void onCollision(){
+			stop();
+			Vec2 direction = contactPoint.sub(runnerBody.getPosition());
+			float angle = (float) (180 * Math.atan2(direction.y, direction.x) / Math.PI);
+			if(angle < 0) angle += 360;
+			report(MappingEvent.Type.COLLISION, angle);
+		}
+
+		private void onDistanceReached(){
+			switch(state){
+				case DRIVING:
+					stop();
+					report(MappingEvent.Type.DISTANCE_REACHED);
+					break;
+				case SQUARE_FASE1:
+					state = RunnerState.SQUARE_FASE2;
+					startLeg(heading + (isRightSquare ? 90 : -90), SQUARE_EDGE);
+					break;
+				case SQUARE_FASE2:
+					state = RunnerState.SQUARE_FASE3;
+					startLeg(heading + (isRightSquare ? 90 : -90), SQUARE_EDGE);
+					break;
+				case SQUARE_FASE3:
+					state = RunnerState.SQUARE_FASE4;
+					startLeg(heading + (isRightSquare ? 90 : -90), SQUARE_EDGE);
+					break;
+				case SQUARE_FASE4:
+					state = RunnerState.SQUARE_FASE5;
+					startLeg(heading + (isRightSquare ? 90 : -90), SQUARE_EDGE / 2);
+					break;
+				case SQUARE_FASE5:
+					stop();
+					report(MappingEvent.Type.SQUARE_COMPLETED);
+					break;
+				case PATH_DRIVING:
+					path.remove(0);
+					if(path.isEmpty()){
+						stop();
+						report(MappingEvent.Type.POINTS_COMPLETED);
+					} else {
+						report(MappingEvent.Type.POINT_REACHED);
+						driveToNextPoint();
+					}
+					break;
+			}
+		}
+	}
+
+	private class SimulationContactListener implements ContactListener{
+		private final WorldManifold worldManifold = new WorldManifold();
+
+		@Override
+		public void beginContact(Contact contact) {
+			if(!involvesRunner(contact)) return;
+			contact.getWorldManifold(worldManifold);
+			contactPoint.set(worldManifold.points[0]);
+			contactBegun = true;
+		}
+
+		@Override
+		public void endContact(Contact contact) {}
+
+		@Override
+		public void preSolve(Contact contact, Manifold oldManifold) {}
+
+		@Override
+		public void postSolve(Contact contact, ContactImpulse impulse) {}
+	}
+
+	/**
+	 * Writes the end of the trace and closes it, if it's recorded.
+	 * @throws IOException If writing the trace failed.
+	 */
+	public void closeTrace() throws IOException{
+		if(traceRecorder != null) traceRecorder.close();
+	}
+
+	/**
+	 *
+	 * @param wkt The objects of the arena, scaled by a tenth like the windowed
+	 * simulation.
+	 * @return The simulation of the arena.
+	 * @throws ParseException
+	 * @see Simulation#fromWKT(java.lang.String)
+	 */
+	public static HeadlessSimulation fromWKT(String wkt) throws ParseException{
+		WKTReader wKTReader = new WKTReader();
+		Geometry environmentGeometry = wKTReader.read(wkt);
+		environmentGeometry.apply(new CoordinateScaleFilter(.1));
+		return new HeadlessSimulation(environmentGeometry);
+	}
+
+	/**
+	 *
+	 * @param wkt The objects of the arena, scaled by a tenth like the windowed
+	 * simulation.
+	 * @param parameters The parameters of the mapper.
+	 * @return The simulation of the arena.
+	 * @throws ParseException
+	 */
+	public static HeadlessSimulation fromWKT(String wkt, Parameters parameters) throws ParseException{
+		WKTReader wKTReader = new WKTReader();
+		Geometry environmentGeometry = wKTReader.read(wkt);
+		environmentGeometry.apply(new CoordinateScaleFilter(.1));
+		return new HeadlessSimulation(environmentGeometry, parameters);
+	}
+
+	/**
+	 * Runs the arena of the finishing test and prints how long it took and
+	 * the measures of the mapper. If a checkpoint file is given, the mapper
+	 * is checkpointed at the end and restored to a new mapper, and the times
+	 * and what was restored are printed.
+	 * @param args The maximum simulated time, in seconds, the file the
+	 * trace is written to, replacing what it had, if it's recorded, and the
+	 * checkpoint file, if any.
+	 * @throws ParseException
+	 * @throws IOException If the trace or the checkpoint can't be written.
+	 * @throws Exception If writing the checkpoint fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		Geometry environmentGeometry = new WKTReader().read(
+				"MULTIPOLYGON (((55 52, -60 52, -60 70, 55 70, 55 52)), \n" +
+"  ((40 80, 55 80, 55 -69, 40 -69, 40 80)), \n" +
+"  ((80 -60, -70 -60, -70 -50, 80 -50, 80 -60)), \n" +
+"  ((-30 -80, -50 -80, -50 90, -30 90, -30 -80)))"
+		);
+		environmentGeometry.apply(new CoordinateScaleFilter(.1));
+		Parameters parameters = new Parameters();
+		parameters.setCommanderDriveDistance(4);
+		OutputStream trace = args.length > 1 ? new FileOutputStream(new File(args[1])) : null;
+		HeadlessSimulation simulation = new HeadlessSimulation(environmentGeometry, parameters, trace);
+		MetricsRecorder metrics = new MetricsRecorder();
+		simulation.getMapper().setMetrics(metrics);
+		float maxTime = args.length > 0 ? Float.parseFloat(args[0]) : 3600;
+		long start = System.nanoTime();
+		boolean finished = simulation.run(maxTime);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("Finished: " + finished);
+		System.out.println("Simulated time: " + simulation.getTime() + " s, real time: " + seconds + " s");
+		System.out.println("Events: " + simulation.getEventCount());
+		System.out.println("Random seed: " + parameters.getRandomSeed());
+		System.out.println("Coverage ratio: " + simulation.getMapper().getCoverageRatio());
+		metrics.snapshot().dump(System.out);
+		simulation.closeTrace();
+		if(args.length > 2) checkpointAndRestore(simulation.getMapper(), new File(args[2]));
+	}
+
+	private static void checkpointAndRestore(Mapper mapper, File file) throws Exception {
+		long start = System.nanoTime();
+		MapperCheckpoint checkpoint = mapper.checkpoint();
+		long taken = System.nanoTime();
+		checkpoint.writeInBackground(file).get();
+		long written = System.nanoTime();
+		Mapper restored = new Mapper(null, mapper.getParameters());
+		restored.restore(MapperCheckpoint.read(file, mapper.getParameters()));
+		long end = System.nanoTime();
+		System.out.println("Checkpoint: " + file.length() + " bytes, taken in " + (taken - start) / 1000 + " us, written in "
+				+ (written - taken) / 1000 + " us, read and restored in " + (end - written) / 1000 + " us");
+		System.out.println("Restored state: " + restored.getState() + ", coverage ratio: " + restored.getCoverageRatio()
+				+ ", same layers: " + (restored.getFreeGeometry().equalsExact(mapper.getFreeGeometry())
+				&& restored.getPerimeterGeometry().equalsExact(mapper.getPerimeterGeometry())));
+	}
+}
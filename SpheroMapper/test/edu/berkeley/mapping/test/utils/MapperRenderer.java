@@ -9,6 +9,7 @@ package edu.berkeley.mapping.test.utils;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineString;
+import edu.berkeley.mapping.MapSnapshot;
 import edu.berkeley.mapping.Mapper;
 import edu.berkeley.mapping.MappingEvent;
 import edu.berkeley.mapping.StateChangeListener;
@@ -35,7 +36,16 @@ public class MapperRenderer extends JFrame{
 	
 	private final ShapeFactory shapeFactory = new ShapeFactory();
 	
-	private MappingEvent lastEvent;
+	/**
+	 * The version of the last snapshot painted. The runner is only painted
+	 * once for each snapshot.
+	 */
+	private long paintedVersion = -1;
+	
+	/**
+	 * The last edges painted. The edges are only painted once.
+	 */
+	private Geometry paintedEdges;
 
 	public MapperRenderer(Mapper mapper) {
 		this.mapper = mapper;
@@ -63,11 +73,15 @@ public class MapperRenderer extends JFrame{
 		protected void paintComponent(Graphics g) {
 			super.paintComponent(g);
 			Graphics2D g2d = (Graphics2D) g;
-			Geometry freeGeometry = mapper.getFreeGeometry();
-			Geometry objectsGeometry = mapper.getObjectsGeometry();
-			Geometry perimeterGeometry = mapper.getPerimeterGeometry();
-			Geometry pathGeometry = mapper.getPathGeometry();
-			Geometry edgesGeometry = mapper.getEdgesGeometry();
+			MapSnapshot snapshot = mapper.getSnapshot();
+			boolean newSnapshot = snapshot.getVersion() != paintedVersion;
+			paintedVersion = snapshot.getVersion();
+			Geometry freeGeometry = snapshot.getFreeGeometry();
+			Geometry objectsGeometry = snapshot.getObjectsGeometry();
+			Geometry perimeterGeometry = snapshot.getPerimeterGeometry();
+			Geometry pathGeometry = snapshot.getPathGeometry();
+			Geometry edgesGeometry = snapshot.getEdgesGeometry();
+			MappingEvent lastEvent = snapshot.getEvent();
 			/*Define bounds*/
 			Rectangle bounds = defaultBounds;
 			if(!freeGeometry.isEmpty()){
@@ -131,22 +145,21 @@ public class MapperRenderer extends JFrame{
 			}
 			
 			//Edges geometry
-			if(edgesGeometry != null){
+			if(edgesGeometry != null && edgesGeometry != paintedEdges){
+				paintedEdges = edgesGeometry;
 				for (int i = 0; i < edgesGeometry.getNumGeometries(); i++) {
 					Geometry line = edgesGeometry.getGeometryN(i);
 					Shape objectsShape = shapeFactory.fromGeometry(line);
 					g2d.setColor(Color.CYAN);
 					g2d.draw(objectsShape);
-					mapper.eraseEdgesGeometry();
 				}
 			}
 			
-			if(lastEvent != null){
+			if(newSnapshot && lastEvent != null){
 				Point point = shapeFactory.coordinateToPoint(new Coordinate(lastEvent.getX(), lastEvent.getY()));
 				Shape runnerShape = new Ellipse2D.Float(point.x-4, point.y-4, 8, 8);
 				g2d.setColor(Color.RED);
 				g2d.fill(runnerShape);
-				lastEvent = null;
 			}
 			
 		}
@@ -156,7 +169,6 @@ public class MapperRenderer extends JFrame{
 
 		@Override
 		public void onStateChange(Mapper.State oldState, Mapper.State newState, MappingEvent event) {
-			lastEvent = event;
 			repaint();
 		}
 		